@@ -43,6 +43,15 @@ android {
         jvmTarget = "11"
     }
 
+    testOptions {
+        // 单元测试中 android.util.Log 等桩方法返回默认值，不抛出异常
+        unitTests.isReturnDefaultValues = true
+        // NetworkLoadTest 的吞吐量、延迟和内存阈值只在 ./gradlew test -Dvision.perf=true 时检查
+        unitTests.all {
+            it.systemProperty("vision.perf", System.getProperty("vision.perf") ?: "false")
+        }
+    }
+
     buildFeatures {
         compose = true
         buildConfig = true
@@ -81,12 +90,18 @@ dependencies {
     implementation("com.github.bumptech.glide:glide:4.16.0")
     implementation(project(":opencv"))
     annotationProcessor("com.github.bumptech.glide:compiler:4.16.0")
+    implementation("com.github.bumptech.glide:recyclerview-integration:4.16.0") {
+        isTransitive = false
+    }
 
     // UI组件
     implementation("com.google.android.material:material:1.11.0")
     implementation("androidx.swiperefreshlayout:swiperefreshlayout:1.1.0")
     implementation("androidx.recyclerview:recyclerview:1.3.2")
 
+    // 后台任务
+    implementation("androidx.work:work-runtime:2.9.0")
+
     // AppCompat 和 ConstraintLayout 依赖
     implementation(libs.appcompat)
     implementation(libs.constraintlayout)
@@ -103,7 +118,6 @@ dependencies {
     implementation("com.squareup.retrofit2:converter-gson:2.9.0")
     implementation("com.google.code.gson:gson:2.10.1")
     implementation("com.github.yalantis:ucrop:2.2.8")
-    implementation("id.zelory:compressor:2.1.1")
     implementation("com.vanniktech:android-image-cropper:4.6.0")
 
     // 其他已有的依赖
@@ -116,6 +130,12 @@ dependencies {
     implementation(libs.androidx.ui.tooling.preview)
     implementation(libs.androidx.material3)
     testImplementation(libs.junit)
+    // 网络层测试：本地模拟服务器；android.jar 中的 org.json 只是桩，单元测试换用真实实现
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.11.0")
+    testImplementation("org.json:json:20231013")
+    // 签名等热点路径的 JMH 基准，只在测试源码中
+    testImplementation("org.openjdk.jmh:jmh-core:1.37")
+    testAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
     androidTestImplementation(libs.androidx.junit)
     androidTestImplementation(libs.androidx.espresso.core)
     androidTestImplementation(platform(libs.androidx.compose.bom))
@@ -1,11 +1,10 @@
 package com.example.vision;
 
+import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.PointF;
 import android.net.Uri;
 import android.os.Bundle;
+import android.text.format.Formatter;
 import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
@@ -14,11 +13,14 @@ import androidx.activity.OnBackPressedCallback;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.core.content.FileProvider;
+import com.example.vision.work.JobQueue;
+import com.example.vision.work.JobStore;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
@@ -28,6 +30,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.lang.ref.WeakReference;
 
@@ -43,6 +47,7 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
     private AlertDialog progressDialog;
     private View processingProgress;
     private volatile boolean isProcessing = false;
+    private String activeJobId;
 
     private String currentSelectionMode = null;
     private MaterialButton selectAllButton;
@@ -87,12 +92,29 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
         initSelectionControls();
         setupBackPressedCallback();
 
+        if (savedInstanceState != null) {
+            restoreActiveJob(savedInstanceState.getString("activeJobId"));
+        }
+
         String imagePath = getIntent().getStringExtra("imagePath");
         if (imagePath != null) {
             handleNewPhoto(imagePath);
         }
     }
 
+    private void restoreActiveJob(String jobId) {
+        if (jobId == null) return;
+        JobStore.JobRecord record = JobStore.getInstance(this).get(jobId);
+        if (record == null) return;
+
+        if (JobStore.TYPE_PROCESS.equals(record.type)) {
+            showProcessingDialog();
+        } else {
+            showExportProgress(true);
+        }
+        observeJob(jobId);
+    }
+
     private void setupBackPressedCallback() {
         getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
             @Override
@@ -443,7 +465,7 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
                 exportSelectedToPdf(selectedItems);
                 break;
             case "png":
-                exportSelectedToPng(selectedItems);
+                chooseImageFormat(selectedItems);
                 break;
             case "correct":
                 processSelectedDocuments(selectedItems);
@@ -454,166 +476,188 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
     }
 
     private void processSelectedDocuments(@NonNull ArrayList<DocumentPhotoManager.PhotoItem> items) {
-        final Set<Integer> selectedPositions = photoAdapter.getSelectedItems();
         showProcessingDialog();
         Log.d(TAG, "开始处理文档...");
 
-        new Thread(() -> {
-            try {
-                ArrayList<DocumentPhotoManager.PhotoItem> processedItems = new ArrayList<>();
-                for (DocumentPhotoManager.PhotoItem item : items) {
-                    File sourceFile = new File(item.getOriginalPath());
-                    if (!sourceFile.exists()) {
-                        throw new IOException("源文件不可访问: " + item.getOriginalPath());
-                    }
-
-                    Bitmap bitmap = BitmapFactory.decodeFile(item.getOriginalPath());
-                    if (bitmap != null) {
-                        try {
-                            float width = bitmap.getWidth();
-                            float height = bitmap.getHeight();
-
-                            Uri sourceUri = Uri.fromFile(sourceFile);
-                            DocumentProcessor.DocumentResult result =
-                                    DocumentProcessor.processDocument(this, sourceUri,
-                                            new PointF[] {
-                                                    new PointF(0, 0),
-                                                    new PointF(0, height),
-                                                    new PointF(width, height),
-                                                    new PointF(width, 0)
-                                            }
-                                    );
-
-                            // 添加历史记录
-                            DocumentHistoryManager.HistoryItem historyItem = new DocumentHistoryManager.HistoryItem(
-                                    item.getOriginalPath(),
-                                    result.processedPath,
-                                    result.thumbnailPath,
-                                    System.currentTimeMillis()
-                            );
-
-                            boolean success = DocumentHistoryManager.addHistory(this, historyItem);
-                            Log.d(TAG, "History record added: " + success);
-
-                            processedItems.add(new DocumentPhotoManager.PhotoItem(
-                                    result.processedPath,
-                                    result.thumbnailPath,
-                                    System.currentTimeMillis()
-                            ));
-
-                        } finally {
-                            bitmap.recycle();
-                        }
-                    }
-                }
+        List<String> sourcePaths = new ArrayList<>();
+        for (DocumentPhotoManager.PhotoItem item : items) {
+            sourcePaths.add(item.getOriginalPath());
+        }
 
-                runOnUiThread(() -> {
-                    try {
-                        int processedIndex = 0;
-                        for (Integer position : selectedPositions) {
-                            if (processedIndex < processedItems.size()) {
-                                photoItems.set(position, processedItems.get(processedIndex++));
-                            }
-                        }
-                        photoAdapter.notifyDataSetChanged();
-                        Toast.makeText(this, R.string.process_all_success, Toast.LENGTH_SHORT).show();
-                    } finally {
-                        hideProcessingDialog();
-                        exitSelectionMode();
-                    }
-                });
+        try {
+            observeJob(JobQueue.enqueueProcessing(this, sourcePaths));
+        } catch (IOException e) {
+            Log.e(TAG, "处理文档出错", e);
+            Toast.makeText(this, getString(R.string.process_failed) + ": " + e.getMessage(),
+                    Toast.LENGTH_LONG).show();
+            hideProcessingDialog();
+            exitSelectionMode();
+        }
+    }
 
-            } catch (Exception e) {
-                Log.e(TAG, "处理文档出错", e);
-                runOnUiThread(() -> {
-                    Toast.makeText(this, getString(R.string.process_failed) + ": " + e.getMessage(),
-                            Toast.LENGTH_LONG).show();
-                    hideProcessingDialog();
-                    exitSelectionMode();
-                });
+    private void updateProcessingProgress(int completed, int total) {
+        runOnUiThread(() -> {
+            if (progressDialog != null && progressDialog.isShowing()) {
+                TextView processingText = progressDialog.findViewById(R.id.processingText);
+                if (processingText != null) {
+                    processingText.setText(getString(R.string.processing_progress, completed, total));
+                }
             }
-        }).start();
+        });
     }
 
     private void exportSelectedToPdf(@NonNull ArrayList<DocumentPhotoManager.PhotoItem> items) {
+        // 可搜索 PDF 会为尚无识别文本的页面请求文档识别
+        String[] types = {JobStore.TYPE_EXPORT_PDF, JobStore.TYPE_EXPORT_SEARCHABLE_PDF};
+        String[] labels = {
+                getString(R.string.export_pdf_plain),
+                getString(R.string.export_pdf_searchable)
+        };
+        new MaterialAlertDialogBuilder(this)
+                .setTitle(R.string.export_pdf_mode)
+                .setItems(labels, (dialog, which) -> exportSelected(types[which], items))
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private void chooseImageFormat(@NonNull ArrayList<DocumentPhotoManager.PhotoItem> items) {
+        // JPEG 与处理结果同格式，直接链接或拷贝；PNG 和 WebP 需要转码；ZIP / CBZ 打包成单个文件
+        String[] types = {JobStore.TYPE_EXPORT_JPEG, JobStore.TYPE_EXPORT_PNG, JobStore.TYPE_EXPORT_WEBP,
+                JobStore.TYPE_EXPORT_ZIP, JobStore.TYPE_EXPORT_CBZ};
+        String[] labels = {
+                getString(R.string.export_format_jpeg),
+                getString(R.string.export_format_png),
+                getString(R.string.export_format_webp),
+                getString(R.string.export_format_zip),
+                getString(R.string.export_format_cbz)
+        };
+        new MaterialAlertDialogBuilder(this)
+                .setTitle(R.string.export_image_format)
+                .setItems(labels, (dialog, which) -> exportSelected(types[which], items))
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private void exportSelected(@NonNull String type, @NonNull ArrayList<DocumentPhotoManager.PhotoItem> items) {
         showExportProgress(true);
-        new Thread(() -> {
-            try {
-                for (DocumentPhotoManager.PhotoItem item : items) {
-                    File sourceFile = new File(item.getOriginalPath());
-                    if (!sourceFile.exists() || !sourceFile.canRead()) {
-                        throw new IOException("Source file not accessible: " + item.getOriginalPath());
-                    }
-                }
+        List<String> sourcePaths = new ArrayList<>();
+        for (DocumentPhotoManager.PhotoItem item : items) {
+            sourcePaths.add(item.getOriginalPath());
+        }
 
-                String outputPath = DocumentExporter.exportToPdf(this, items);
-                File outputFile = new File(outputPath);
-                if (!outputFile.exists() || !outputFile.canRead()) {
-                    throw new IOException("Output file not accessible: " + outputPath);
+        try {
+            observeJob(JobQueue.enqueueExport(this, type, sourcePaths));
+        } catch (IOException e) {
+            Log.e(TAG, "导出失败", e);
+            showExportProgress(false);
+            Toast.makeText(this, getString(R.string.export_failed) + ": " + e.getMessage(),
+                    Toast.LENGTH_LONG).show();
+            exitSelectionMode();
+        }
+    }
+
+    /**
+     * 观察后台任务，任务在 Activity 重建或进程重启后仍然有效，结果只应用一次。
+     */
+    private void observeJob(@NonNull String jobId) {
+        activeJobId = jobId;
+        JobStore store = JobStore.getInstance(this);
+        store.observe(jobId).observe(this, record -> {
+            if (record == null || !jobId.equals(activeJobId)) return;
+            if (!record.isFinished()) {
+                if (JobStore.TYPE_PROCESS.equals(record.type)) {
+                    updateProcessingProgress(record.getCompletedCount(), record.items.size());
                 }
+                return;
+            }
 
-                runOnUiThread(() -> {
-                    showExportProgress(false);
-                    showExportSuccess("PDF", outputPath);
-                    exitSelectionMode();
-                });
-            } catch (Exception e) {
-                Log.e(TAG, "PDF导出失败", e);
-                runOnUiThread(() -> {
-                    showExportProgress(false);
-                    Toast.makeText(this,
-                            getString(R.string.export_failed) + ": " + e.getMessage(),
-                            Toast.LENGTH_LONG).show();
-                    exitSelectionMode();
-                });
+            activeJobId = null;
+            store.remove(jobId);
+            if (JobStore.TYPE_PROCESS.equals(record.type)) {
+                onProcessingFinished(record);
+            } else {
+                onExportFinished(record);
             }
-        }).start();
+        });
     }
 
-    private void exportSelectedToPng(@NonNull ArrayList<DocumentPhotoManager.PhotoItem> items) {
-        showExportProgress(true);
-        new Thread(() -> {
-            try {
-                for (DocumentPhotoManager.PhotoItem item : items) {
-                    File sourceFile = new File(item.getOriginalPath());
-                    if (!sourceFile.exists() || !sourceFile.canRead()) {
-                        throw new IOException("Source file not accessible: " + item.getOriginalPath());
-                    }
-                }
-
-                String outputPathWithCount = DocumentExporter.exportToPng(this, items);
-                String[] parts = outputPathWithCount.split(":");
-                String outputPath = parts[0];
-                int successCount = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+    private void onProcessingFinished(@NonNull JobStore.JobRecord record) {
+        try {
+            if (JobStore.STATE_FAILED.equals(record.state)) {
+                Toast.makeText(this, getString(R.string.process_failed) + ": " + record.error,
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
 
-                File outputDir = new File(outputPath);
-                if (!outputDir.exists()) {
-                    throw new IOException("Output directory not accessible: " + outputPath);
+            // 按源路径找回页面，失败的页面保持原样
+            int failedCount = 0;
+            for (JobStore.JobItem item : record.items) {
+                if (item.processedPath == null) {
+                    failedCount++;
+                    continue;
                 }
+                int position = findPhotoPosition(item.sourcePath);
+                if (position != -1) {
+                    photoItems.set(position, new DocumentPhotoManager.PhotoItem(
+                            item.processedPath,
+                            item.thumbnailPath,
+                            System.currentTimeMillis()
+                    ));
+                    photoAdapter.notifyItemChanged(position);
+                }
+            }
 
-                runOnUiThread(() -> {
-                    showExportProgress(false);
-                    String message = getString(R.string.export_multiple_success, successCount);
-                    new MaterialAlertDialogBuilder(this)
-                            .setTitle(R.string.export_success)
-                            .setMessage(message)
-                            .setPositiveButton(R.string.share, (dialog, which) ->
-                                    shareFile(outputPath, "PNG"))
-                            .setNegativeButton(R.string.confirm, null)
-                            .show();
-                    exitSelectionMode();
-                });
-            } catch (Exception e) {
-                Log.e(TAG, "PNG导出失败", e);
-                runOnUiThread(() -> {
-                    showExportProgress(false);
-                    Toast.makeText(this,
-                            getString(R.string.export_failed) + ": " + e.getMessage(),
-                            Toast.LENGTH_LONG).show();
-                    exitSelectionMode();
-                });
+            if (failedCount == 0) {
+                Toast.makeText(this, R.string.process_all_success, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, getString(R.string.process_partial_success,
+                        record.items.size() - failedCount, failedCount), Toast.LENGTH_LONG).show();
             }
-        }).start();
+        } finally {
+            hideProcessingDialog();
+            exitSelectionMode();
+        }
+    }
+
+    private void onExportFinished(@NonNull JobStore.JobRecord record) {
+        showExportProgress(false);
+        exitSelectionMode();
+        if (JobStore.STATE_FAILED.equals(record.state) || record.output == null) {
+            Toast.makeText(this,
+                    getString(R.string.export_failed) + ": " + record.error,
+                    Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        if (JobStore.TYPE_EXPORT_PDF.equals(record.type)
+                || JobStore.TYPE_EXPORT_SEARCHABLE_PDF.equals(record.type)) {
+            showExportSuccess("PDF", record.output);
+            return;
+        }
+        if (JobStore.TYPE_EXPORT_ZIP.equals(record.type)) {
+            showExportSuccess("ZIP", record.output);
+            return;
+        }
+        if (JobStore.TYPE_EXPORT_CBZ.equals(record.type)) {
+            showExportSuccess("CBZ", record.output);
+            return;
+        }
+
+        String[] parts = record.output.split(":");
+        String outputPath = parts[0];
+        int successCount = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+        String message = getString(R.string.export_multiple_success, successCount);
+        if (parts.length > 2) {
+            message += "\n" + getString(R.string.export_throughput,
+                    Formatter.formatShortFileSize(this, Long.parseLong(parts[2])));
+        }
+        new MaterialAlertDialogBuilder(this)
+                .setTitle(R.string.export_success)
+                .setMessage(message)
+                .setPositiveButton(R.string.share, (dialog, which) ->
+                        shareFile(outputPath, "PNG"))
+                .setNegativeButton(R.string.confirm, null)
+                .show();
     }
 
     private int findPhotoPosition(@NonNull String originalPath) {
@@ -646,14 +690,18 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
                         }
                         updatePhotoCount();
 
-                        File originalFile = new File(item.getOriginalPath());
-                        File thumbnailFile = new File(item.getThumbnailPath());
-                        if (originalFile.exists()) {
-                            originalFile.delete();
-                        }
-                        if (thumbnailFile.exists()) {
-                            thumbnailFile.delete();
+                        // 同一文件可能还被列表中的其他页或历史记录引用，只删除不再使用的文件
+                        Set<String> inUse = new HashSet<>();
+                        for (DocumentPhotoManager.PhotoItem remaining : photoItems) {
+                            inUse.add(remaining.getOriginalPath());
+                            inUse.add(remaining.getProcessedPath());
+                            inUse.add(remaining.getThumbnailPath());
                         }
+                        Context appContext = getApplicationContext();
+                        new Thread(() -> {
+                            deleteIfUnused(appContext, item.getOriginalPath(), inUse);
+                            deleteIfUnused(appContext, item.getThumbnailPath(), inUse);
+                        }).start();
                     } catch (Exception e) {
                         Log.e(TAG, "删除文件失败", e);
                     }
@@ -662,6 +710,16 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
                 .show();
     }
 
+    private static void deleteIfUnused(@NonNull Context context, @Nullable String path, @NonNull Set<String> inUse) {
+        if (path == null || inUse.contains(path)) {
+            return;
+        }
+        File file = new File(path);
+        if (file.exists() && !DocumentHistoryManager.isFileReferenced(context, path, -1) && !file.delete()) {
+            Log.w(TAG, "删除文件失败: " + path);
+        }
+    }
+
     private void copyFile(@NonNull File source, @NonNull File dest) throws IOException {
         try (FileInputStream fis = new FileInputStream(source);
              FileOutputStream fos = new FileOutputStream(dest);
@@ -697,6 +755,10 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
             runOnUiThread(() -> {
                 if (progressDialog != null) {
                     progressDialog.show();
+                    TextView processingText = progressDialog.findViewById(R.id.processingText);
+                    if (processingText != null) {
+                        processingText.setText(R.string.processing);
+                    }
                 }
             });
         }
@@ -748,7 +810,7 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
                 if (files != null) {
                     for (File imageFile : files) {
                         String name = imageFile.getName().toLowerCase();
-                        if (name.endsWith(".png") || name.endsWith(".jpg")) {
+                        if (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".webp")) {
                             Uri uri = FileProvider.getUriForFile(this,
                                     BuildConfig.APPLICATION_ID + ".provider",
                                     imageFile);
@@ -777,7 +839,7 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
                 shareIntent.putExtra(Intent.EXTRA_STREAM, uris.get(0));
             }
 
-            shareIntent.setType("image/*");
+            shareIntent.setType(getShareMimeType(type));
             shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
             startActivity(Intent.createChooser(shareIntent, getString(R.string.share_file)));
         } catch (Exception e) {
@@ -786,6 +848,19 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
         }
     }
 
+    private static String getShareMimeType(@NonNull String type) {
+        switch (type) {
+            case "PDF":
+                return "application/pdf";
+            case "ZIP":
+                return "application/zip";
+            case "CBZ":
+                return "application/vnd.comicbook+zip";
+            default:
+                return "image/*";
+        }
+    }
+
     private void updatePhotoCount() {
         photoCountText.setText(String.format(getString(R.string.photo_count_format),
                 photoItems.size()));
@@ -851,6 +926,7 @@ public class DocumentActivity extends AppCompatActivity implements PhotoAdapter.
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putParcelableArrayList("photoItems", photoItems);
+        outState.putString("activeJobId", activeJobId);
     }
 
     @Override
@@ -0,0 +1,187 @@
+package com.example.vision;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.graphics.PointF;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量文档处理。
+ * 在固定数量的工作线程上并行处理多页，结果按输入顺序返回，单页失败不影响其余页面。
+ */
+public class DocumentBatchProcessor {
+    private static final String TAG = "DocumentBatchProcessor";
+    private static final int MAX_DEFAULT_WORKERS = 3;
+
+    public interface BatchCallback {
+        // 每完成一页回调一次，在工作线程上调用
+        void onItemProcessed(@NonNull ItemResult item, int completed, int total);
+    }
+
+    public static class ItemResult {
+        public final int index;
+        public final String sourcePath;
+        @Nullable public final DocumentProcessor.DocumentResult result;
+        @Nullable public final Exception error;
+
+        ItemResult(int index, String sourcePath, @Nullable DocumentProcessor.DocumentResult result,
+                   @Nullable Exception error) {
+            this.index = index;
+            this.sourcePath = sourcePath;
+            this.result = result;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return result != null;
+        }
+    }
+
+    private final Context context;
+    private final int workerCount;
+
+    public DocumentBatchProcessor(@NonNull Context context) {
+        this(context, defaultWorkerCount());
+    }
+
+    public DocumentBatchProcessor(@NonNull Context context, int workerCount) {
+        this.context = context.getApplicationContext();
+        this.workerCount = Math.max(1, workerCount);
+    }
+
+    public static int defaultWorkerCount() {
+        // 每页都占用较多原生内存，并发页数取核心数的一半并设上限
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(cores / 2, MAX_DEFAULT_WORKERS));
+    }
+
+    /**
+     * 处理整批图片并阻塞到全部完成，不要在主线程调用。
+     * 每页都以整幅图作为裁剪区域，返回列表与输入顺序一一对应。
+     */
+    @NonNull
+    public List<ItemResult> process(@NonNull List<String> sourcePaths,
+                                    @Nullable BatchCallback callback) throws InterruptedException {
+        return process(sourcePaths, null, callback);
+    }
+
+    /**
+     * 同上，cornersList 与 sourcePaths 一一对应，元素为空时使用整幅图。
+     */
+    @NonNull
+    public List<ItemResult> process(@NonNull List<String> sourcePaths,
+                                    @Nullable List<PointF[]> cornersList,
+                                    @Nullable BatchCallback callback) throws InterruptedException {
+        int total = sourcePaths.size();
+        ItemResult[] results = new ItemResult[total];
+        if (total == 0) {
+            return new ArrayList<>();
+        }
+
+        // 多页并行时页面本身就是并行单位，单页内不再分条，避免线程过度竞争；
+        // 只有一页时线程池只有一个线程，仍然分条利用多核
+        int poolSize = Math.min(workerCount, total);
+        DocumentProcessor.EnhanceMode mode = poolSize > 1
+                ? DocumentProcessor.EnhanceMode.SINGLE_PASS
+                : DocumentProcessor.EnhanceMode.TILED;
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "doc-batch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long startTime = SystemClock.elapsedRealtime();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < total; i++) {
+                final int index = i;
+                futures.add(executor.submit(() -> {
+                    String path = sourcePaths.get(index);
+                    PointF[] corners = cornersList != null ? cornersList.get(index) : null;
+                    ItemResult item;
+                    try {
+                        item = new ItemResult(index, path, processItem(path, corners, mode), null);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Failed to process page " + index + ": " + path, e);
+                        item = new ItemResult(index, path, null, e);
+                    }
+                    results[index] = item;
+                    int done = completed.incrementAndGet();
+                    if (callback != null) {
+                        synchronized (callback) {
+                            callback.onItemProcessed(item, done, total);
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // processItem 已捕获处理异常，这里只可能是回调本身出错
+                    Log.e(TAG, "Batch callback failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+            // 批次结束后释放工作区的空闲缓冲区，空闲时不长期占用原生内存
+            MatWorkspace.getInstance().clear();
+        }
+
+        Log.d(TAG, String.format("Processed %d pages with %d workers in %d ms",
+                total, workerCount, SystemClock.elapsedRealtime() - startTime));
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    private DocumentProcessor.DocumentResult processItem(@NonNull String path, @Nullable PointF[] corners,
+                                                         @NonNull DocumentProcessor.EnhanceMode mode) throws IOException {
+        File sourceFile = new File(path);
+        if (!sourceFile.exists()) {
+            throw new IOException("源文件不可访问: " + path);
+        }
+        if (corners != null) {
+            return DocumentProcessor.processDocument(context, Uri.fromFile(sourceFile), corners, mode);
+        }
+
+        // 只读取尺寸，不解码像素
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("无法读取图片尺寸: " + path);
+        }
+
+        float width = options.outWidth;
+        float height = options.outHeight;
+        return DocumentProcessor.processDocument(context, Uri.fromFile(sourceFile),
+                new PointF[] {
+                        new PointF(0, 0),
+                        new PointF(0, height),
+                        new PointF(width, height),
+                        new PointF(width, 0)
+                },
+                mode);
+    }
+}
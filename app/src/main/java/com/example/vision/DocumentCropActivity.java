@@ -10,16 +10,18 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import com.example.vision.work.JobQueue;
+import com.example.vision.work.JobStore;
 import com.google.android.material.button.MaterialButton;
 import androidx.appcompat.app.AlertDialog;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import java.io.InputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
 
@@ -33,6 +35,7 @@ public class DocumentCropActivity extends AppCompatActivity {
     private PolygonCropView cropView;
     private AlertDialog progressDialog;
     private MaterialButton doneButton;
+    private String activeJobId;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -44,6 +47,17 @@ public class DocumentCropActivity extends AppCompatActivity {
         handleIntent();
         setupButtons();
         initProgressDialog();
+
+        if (savedInstanceState != null && savedInstanceState.getString("activeJobId") != null) {
+            showProcessingDialog();
+            observeJob(savedInstanceState.getString("activeJobId"));
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString("activeJobId", activeJobId);
     }
 
     private void checkPermissions() {
@@ -136,94 +150,15 @@ public class DocumentCropActivity extends AppCompatActivity {
 
             showProcessingDialog();
 
-            // 在新线程中处理文档
-            new Thread(() -> {
-                try {
-                    Log.d(TAG, "开始处理文档...");
-
-                    // 1. 保存裁剪后的图片作为初始图片
-                    File originalDir = new File(getFilesDir(), "cropped");  // 改为 cropped 目录
-                    if (!originalDir.exists() && !originalDir.mkdirs()) {
-                        throw new IOException("无法创建裁剪图片目录");
-                    }
-
-                    String timestamp = String.valueOf(System.currentTimeMillis());
-                    File croppedFile = new File(originalDir, "CROP_" + timestamp + ".jpg");  // 改为 CROP_ 前缀
-
-                    // 将当前图片保存为裁剪后的图片
-                    try (InputStream is = getContentResolver().openInputStream(sourceUri)) {
-                        if (is == null) throw new IOException("无法打开输入流");
-                        try (FileOutputStream fos = new FileOutputStream(croppedFile)) {
-                            byte[] buffer = new byte[8192];
-                            int bytesRead;
-                            while ((bytesRead = is.read(buffer)) != -1) {
-                                fos.write(buffer, 0, bytesRead);
-                            }
-                        }
-                    }
-
-                    Log.d(TAG, "裁剪后图片已保存: " + croppedFile.getAbsolutePath());
-
-                    // 2. 处理文档增强
-                    DocumentProcessor.DocumentResult result =
-                            DocumentProcessor.processDocument(this, Uri.fromFile(croppedFile), corners);  // 使用裁剪后的图片而不是sourceUri
-
-                    // 验证处理结果
-                    if (result == null || result.processedPath == null) {
-                        throw new Exception("处理失败：结果为空");
-                    }
-
-                    // 验证文件是否存在
-                    if (!new File(result.processedPath).exists()) {
-                        throw new Exception("处理后的文件不存在: " + result.processedPath);
-                    }
-
-                    if (result.thumbnailPath != null && !new File(result.thumbnailPath).exists()) {
-                        throw new Exception("缩略图文件不存在: " + result.thumbnailPath);
-                    }
-
-                    // 记录处理结果
-                    Log.d(TAG, "文档处理完成:\n" +
-                            "裁剪后图片路径: " + croppedFile.getAbsolutePath() + "\n" +
-                            "增强后路径: " + result.processedPath + "\n" +
-                            "缩略图路径: " + result.thumbnailPath);
-
-                    // 在主线程中处理结果
-                    runOnUiThread(() -> {
-                        Log.d(TAG, "处理完成，准备返回结果");
-                        Intent resultIntent = new Intent();
-
-                        // 更新返回路径
-                        resultIntent.putExtra("imagePath", result.processedPath);          // 保持向后兼容
-                        resultIntent.putExtra("cropped_file", croppedFile.getAbsolutePath());  // 裁剪后的图片路径
-                        resultIntent.putExtra("enhanced_file", result.processedPath);     // 增强后的图片路径
-                        resultIntent.putExtra("thumbnail_path", result.thumbnailPath);     // 缩略图路径
-                        resultIntent.putExtra("timestamp", timestamp);                     // 添加时间戳
-
-                        Log.d(TAG, String.format("返回Intent数据:\n" +
-                                        "裁剪后文件: %s\n" +
-                                        "增强后文件: %s\n" +
-                                        "缩略图: %s",
-                                croppedFile.getAbsolutePath(),
-                                result.processedPath,
-                                result.thumbnailPath));
-
-                        setResult(RESULT_OK, resultIntent);
-                        finish();
-                    });
-
-                } catch (Exception e) {
-                    Log.e(TAG, "文档处理错误", e);
-                    runOnUiThread(() -> {
-                        String errorMessage = getString(R.string.crop_error_failed) +
-                                ": " + e.getMessage();
-                        Toast.makeText(DocumentCropActivity.this,
-                                errorMessage, Toast.LENGTH_SHORT).show();
-                    });
-                } finally {
-                    runOnUiThread(() -> hideProcessingDialog());
-                }
-            }).start();
+            // 入队只写任务记录，源图由后台任务复制和处理；Activity 只持有任务 id，重建后重新观察同一个任务
+            try {
+                observeJob(JobQueue.enqueueCrop(this, sourceUri, corners));
+            } catch (IOException e) {
+                Log.e(TAG, "文档处理错误", e);
+                hideProcessingDialog();
+                Toast.makeText(this, getString(R.string.crop_error_failed) + ": " + e.getMessage(),
+                        Toast.LENGTH_SHORT).show();
+            }
         });
 
         // 重置按钮点击事件
@@ -234,6 +169,45 @@ public class DocumentCropActivity extends AppCompatActivity {
         });
     }
 
+    private void observeJob(@NonNull String jobId) {
+        activeJobId = jobId;
+        JobStore store = JobStore.getInstance(this);
+        store.observe(jobId).observe(this, record -> {
+            if (record == null || !record.isFinished() || !jobId.equals(activeJobId)) return;
+            activeJobId = null;
+            store.remove(jobId);
+            hideProcessingDialog();
+
+            JobStore.JobItem item = record.items.get(0);
+            String error = record.error != null ? record.error : item.error;
+            if (item.processedPath == null || !new File(item.processedPath).exists()) {
+                Log.e(TAG, "文档处理错误: " + error);
+                Toast.makeText(this, getString(R.string.crop_error_failed) + ": " + error,
+                        Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            // 记录处理结果
+            Log.d(TAG, "文档处理完成:\n" +
+                    "裁剪后图片路径: " + item.sourcePath + "\n" +
+                    "增强后路径: " + item.processedPath + "\n" +
+                    "缩略图路径: " + item.thumbnailPath);
+
+            String croppedName = new File(item.sourcePath).getName();
+            String timestamp = croppedName.substring("CROP_".length(), croppedName.lastIndexOf('.'));
+
+            Intent resultIntent = new Intent();
+            resultIntent.putExtra("imagePath", item.processedPath);          // 保持向后兼容
+            resultIntent.putExtra("cropped_file", item.sourcePath);          // 裁剪后的图片路径
+            resultIntent.putExtra("enhanced_file", item.processedPath);      // 增强后的图片路径
+            resultIntent.putExtra("thumbnail_path", item.thumbnailPath);     // 缩略图路径
+            resultIntent.putExtra("timestamp", timestamp);                   // 添加时间戳
+
+            setResult(RESULT_OK, resultIntent);
+            finish();
+        });
+    }
+
     private void showProcessingDialog() {
         if (!isFinishing() && progressDialog != null) {
             progressDialog.show();
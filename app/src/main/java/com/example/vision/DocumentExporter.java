@@ -1,73 +1,184 @@
 package com.example.vision;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.pdf.PdfDocument;
 import android.net.Uri;
 import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.FileProvider;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DocumentExporter {
     private static final String TAG = "DocumentExporter";
-    private static final int MAX_BITMAP_SIZE = 2048;
+    // 页面长边上限（pt），与原先渲染位图的上限一致
+    private static final int MAX_PAGE_SIZE = 2048;
+    // PDF 导出时预读的页数；每页约为一张处理后 JPEG 的大小
+    private static final int DEFAULT_PDF_WINDOW = 6;
+    private static final int MAX_PDF_THREADS = 3;
     private static final String APP_FOLDER_NAME = "Vision";
 
+    public static final String FORMAT_JPEG = ImageExportEngine.FORMAT_JPEG;
+    public static final String FORMAT_PNG = ImageExportEngine.FORMAT_PNG;
+    public static final String FORMAT_WEBP = ImageExportEngine.FORMAT_WEBP;
+    public static final String FORMAT_ZIP = "zip";
+    public static final String FORMAT_CBZ = "cbz";
+
+    /**
+     * 提供每页的识别文本，在工作线程上调用，可能发起网络请求。
+     */
+    public interface PageTextSource {
+        // 没有文本时返回 null，该页只包含图像
+        @Nullable
+        String getText(@NonNull File page) throws IOException, InterruptedException;
+    }
+
     public static String exportToPdf(Context context,
                                      ArrayList<DocumentPhotoManager.PhotoItem> items) throws IOException {
+        return exportToPdf(context, items, DEFAULT_PDF_WINDOW, null);
+    }
+
+    /**
+     * 导出带不可见文字层的 PDF，阅读器可以搜索和选择页面上的文字。
+     */
+    public static String exportToSearchablePdf(Context context, ArrayList<DocumentPhotoManager.PhotoItem> items,
+                                               @NonNull PageTextSource textSource) throws IOException {
+        return exportToPdf(context, items, DEFAULT_PDF_WINDOW, textSource);
+    }
+
+    /**
+     * 导出 PDF。后续页面在工作线程上并行读取、转码和获取文本，当前线程只负责按顺序写入。
+     *
+     * @param window 已提交但尚未写入的页面数上限，决定了预读数据占用的内存
+     * @param textSource 为空时导出纯图像 PDF
+     */
+    public static String exportToPdf(Context context, ArrayList<DocumentPhotoManager.PhotoItem> items,
+                                     int window, @Nullable PageTextSource textSource) throws IOException {
         if (items.isEmpty()) {
             throw new IOException("No items to export");
         }
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
 
         File outputDir = getOutputDirectory(context, "PDF");
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss",
                 Locale.getDefault()).format(new Date());
         File outputFile = new File(outputDir, "DOC_" + timestamp + ".pdf");
+        // 先写临时文件，全部完成后再改名，失败时不会留下残缺的 PDF
+        File tempFile = new File(outputDir, "DOC_" + timestamp + ".pdf.tmp");
 
-        PdfDocument document = new PdfDocument();
-        try {
-            for (int i = 0; i < items.size(); i++) {
-                Bitmap bitmap = loadAndResizeBitmap(items.get(i).getOriginalPath());
-                if (bitmap == null) continue;
-
-                try {
-                    PdfDocument.PageInfo pageInfo = new PdfDocument.PageInfo.Builder(
-                            bitmap.getWidth(), bitmap.getHeight(), i + 1).create();
-                    PdfDocument.Page page = document.startPage(pageInfo);
-                    page.getCanvas().drawBitmap(bitmap, 0, 0, null);
-                    document.finishPage(page);
-                } finally {
-                    bitmap.recycle();
+        long startTime = System.currentTimeMillis();
+        int threads = Math.max(1, Math.min(window,
+                Math.min(MAX_PDF_THREADS, Runtime.getRuntime().availableProcessors() - 1)));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<PdfPage>> inFlight = new ArrayDeque<>();
+        boolean success = false;
+        // 每页的 JPEG 直接写入输出流，不经过 Bitmap，内存占用只与窗口大小有关
+        try (StreamingPdfWriter writer = new StreamingPdfWriter(tempFile, MAX_PAGE_SIZE)) {
+            int next = 0;
+            while (next < items.size() || !inFlight.isEmpty()) {
+                while (next < items.size() && inFlight.size() < window) {
+                    File source = new File(items.get(next).getOriginalPath());
+                    inFlight.addLast(executor.submit(() -> preparePage(source, textSource)));
+                    next++;
+                }
+                // 无法识别的图片跳过；写入途中的 IO 错误会让整个文件作废
+                PdfPage page = inFlight.removeFirst().get();
+                if (page != null) {
+                    writer.addPage(page.image, page.text);
                 }
             }
-
-            outputDir.mkdirs();
-            try (FileOutputStream out = new FileOutputStream(outputFile)) {
-                document.writeTo(out);
+            writer.finish();
+            success = true;
+            Log.d(TAG, "Exported " + writer.getPageCount() + " pages in "
+                    + (System.currentTimeMillis() - startTime) + " ms, window " + window
+                    + ", " + threads + " threads");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException("PDF export interrupted").initCause(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                // 获取文本时被中断，与写入线程被中断同样处理
+                throw (IOException) new InterruptedIOException("PDF export interrupted").initCause(e.getCause());
             }
-
-            return outputFile.getAbsolutePath();
+            throw new IOException("PDF export failed", e.getCause());
         } finally {
-            document.close();
+            executor.shutdownNow();
+            if (!success && tempFile.exists() && !tempFile.delete()) {
+                Log.w(TAG, "Failed to delete partial PDF: " + tempFile.getPath());
+            }
+        }
+
+        if (!tempFile.renameTo(outputFile)) {
+            tempFile.delete();
+            throw new IOException("Cannot move PDF to " + outputFile.getPath());
         }
+        return outputFile.getAbsolutePath();
+    }
+
+    private static class PdfPage {
+        final StreamingPdfWriter.PreparedPage image;
+        @Nullable final String text;
+
+        PdfPage(StreamingPdfWriter.PreparedPage image, @Nullable String text) {
+            this.image = image;
+            this.text = text;
+        }
+    }
+
+    private static PdfPage preparePage(File source, @Nullable PageTextSource textSource)
+            throws InterruptedException {
+        if (!source.exists() || !source.canRead()) {
+            Log.e(TAG, "Source file not accessible: " + source.getPath());
+            return null;
+        }
+        StreamingPdfWriter.PreparedPage image = StreamingPdfWriter.prepare(source, MAX_PAGE_SIZE);
+        if (image == null) {
+            Log.e(TAG, "Failed to export page: " + source.getPath());
+            return null;
+        }
+
+        String text = null;
+        if (textSource != null) {
+            try {
+                text = textSource.getText(source);
+            } catch (IOException e) {
+                // 识别失败的页仍然导出图像，只是没有文字层
+                Log.e(TAG, "No text for page " + source.getName(), e);
+            }
+        }
+        return new PdfPage(image, text);
     }
 
     public static String exportToPng(Context context,
                                      ArrayList<DocumentPhotoManager.PhotoItem> items) throws IOException {
+        return exportImages(context, items, FORMAT_PNG);
+    }
+
+    /**
+     * 按指定格式逐页导出图片，返回 "目录:成功页数"。
+     * 源文件已是目标格式时直接链接或拷贝，否则并行转码，见 ImageExportEngine。
+     */
+    public static String exportImages(Context context, ArrayList<DocumentPhotoManager.PhotoItem> items,
+                                      String format) throws IOException {
         if (items.isEmpty()) {
             throw new IOException("No items to export");
         }
 
-        File outputDir = getOutputDirectory(context, "PNG");
+        File outputDir = getOutputDirectory(context, format.toUpperCase(Locale.US));
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss",
                 Locale.getDefault()).format(new Date());
         File exportDir = new File(outputDir, "DOC_" + timestamp);
@@ -77,47 +188,65 @@ public class DocumentExporter {
             throw new IOException("Cannot create output directory: " + exportDir.getPath());
         }
 
-        int successCount = 0;
-        ArrayList<File> exportedFiles = new ArrayList<>();
+        ArrayList<File> sources = new ArrayList<>();
+        for (DocumentPhotoManager.PhotoItem item : items) {
+            sources.add(new File(item.getOriginalPath()));
+        }
+        ImageExportEngine.Result result = ImageExportEngine.export(sources, exportDir, format);
 
-        // 导出所有选中的图片
-        for (int i = 0; i < items.size(); i++) {
-            try {
-                DocumentPhotoManager.PhotoItem item = items.get(i);
-                File sourceFile = new File(item.getOriginalPath());
-                String fileName = String.format(Locale.getDefault(), "page_%03d.png", i + 1);
-                File outputFile = new File(exportDir, fileName);
-
-                // 验证源文件
-                if (!sourceFile.exists() || !sourceFile.canRead()) {
-                    Log.e(TAG, "Source file not accessible: " + sourceFile.getPath());
-                    continue;
-                }
+        if (result.pageCount == 0) {
+            throw new IOException("No files were successfully exported");
+        }
 
-                // 复制文件
-                copyFile(sourceFile, outputFile);
-                exportedFiles.add(outputFile);
-                successCount++;
+        // 返回的结果包含目录路径、成功导出的文件数和写入速度（字节/秒）
+        return String.format(Locale.US, "%s:%d:%d", exportDir.getAbsolutePath(), result.pageCount,
+                result.getBytesPerSecond());
+    }
 
-                // 确保文件被正确写入并可读
-                if (!outputFile.exists() || !outputFile.canRead()) {
-                    Log.e(TAG, "Failed to verify exported file: " + outputFile.getPath());
-                    continue;
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to export file at index " + i, e);
-            }
+    /**
+     * 把所有页打包成一个 ZIP 或 CBZ 文件，返回文件路径。
+     * 页面按 page_NNN.<原格式> 命名，已压缩的图片直接存储，见 ZipBundleWriter。
+     */
+    public static String exportToArchive(Context context, ArrayList<DocumentPhotoManager.PhotoItem> items,
+                                         String format) throws IOException {
+        if (items.isEmpty()) {
+            throw new IOException("No items to export");
         }
 
-        if (successCount == 0) {
-            throw new IOException("No files were successfully exported");
+        File outputDir = getOutputDirectory(context, format.toUpperCase(Locale.US));
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss",
+                Locale.getDefault()).format(new Date());
+        File outputFile = new File(outputDir, "DOC_" + timestamp + "." + format);
+        File tempFile = new File(outputDir, "DOC_" + timestamp + "." + format + ".tmp");
+
+        ArrayList<File> sources = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            File source = new File(items.get(i).getOriginalPath());
+            String extension = source.exists() ? ImageExportEngine.detectFormat(source) : null;
+            if (extension == null) {
+                String fileName = source.getName();
+                int dot = fileName.lastIndexOf('.');
+                extension = dot >= 0 ? fileName.substring(dot + 1) : "bin";
+            }
+            sources.add(source);
+            // 阅读器按文件名排序，补零保证页序
+            names.add(String.format(Locale.US, "page_%03d.%s", i + 1, extension));
         }
 
-        // 返回的结果包含目录路径和成功导出的文件数
-        return String.format("%s:%d", exportDir.getAbsolutePath(), successCount);
+        try {
+            ZipBundleWriter.write(tempFile, sources, names);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        if (!tempFile.renameTo(outputFile)) {
+            tempFile.delete();
+            throw new IOException("Cannot move archive to " + outputFile.getPath());
+        }
+        return outputFile.getAbsolutePath();
     }
 
-
     private static File getOutputDirectory(Context context, String type) throws IOException {
         // 使用应用私有目录而不是公共目录
         File baseDir = new File(context.getExternalFilesDir(null), APP_FOLDER_NAME);
@@ -129,34 +258,4 @@ public class DocumentExporter {
 
         return outputDir;
     }
-
-    private static void copyFile(File source, File dest) throws IOException {
-        try (FileInputStream inStream = new FileInputStream(source);
-             FileOutputStream outStream = new FileOutputStream(dest)) {
-
-            byte[] buffer = new byte[8192];
-            int length;
-            while ((length = inStream.read(buffer)) > 0) {
-                outStream.write(buffer, 0, length);
-            }
-            outStream.flush();
-        }
-    }
-
-    private static Bitmap loadAndResizeBitmap(String path) {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(path, options);
-
-        int scale = 1;
-        while (options.outWidth / scale > MAX_BITMAP_SIZE ||
-                options.outHeight / scale > MAX_BITMAP_SIZE) {
-            scale *= 2;
-        }
-
-        options.inJustDecodeBounds = false;
-        options.inSampleSize = scale;
-
-        return BitmapFactory.decodeFile(path, options);
-    }
 }
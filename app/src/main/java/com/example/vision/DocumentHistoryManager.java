@@ -1,20 +1,38 @@
 package com.example.vision;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 public class DocumentHistoryManager {
     private static final String TAG = "DocumentHistoryManager";
-    private static final String HISTORY_FILE = "document_history.json";
+    // 旧版本的 JSON 历史文件，首次打开数据库时导入
+    private static final String LEGACY_HISTORY_FILE = "document_history.json";
+
+    private static final String[] COLUMNS = {
+            HistoryDatabase.COLUMN_ID,
+            HistoryDatabase.COLUMN_ORIGINAL_PATH,
+            HistoryDatabase.COLUMN_PROCESSED_PATH,
+            HistoryDatabase.COLUMN_THUMBNAIL_PATH,
+            HistoryDatabase.COLUMN_TIMESTAMP
+    };
+    private static final String ORDER_BY_NEWEST = HistoryDatabase.COLUMN_TIMESTAMP + " DESC, "
+            + HistoryDatabase.COLUMN_ID + " DESC";
+
+    private static volatile boolean migrationChecked = false;
 
     public static class HistoryItem {
+        private final long id;
         private final String originalPath;
         private final String processedPath;
         private final String thumbnailPath;
@@ -22,12 +40,19 @@ public class DocumentHistoryManager {
 
         // 新的构造方法
         public HistoryItem(String originalPath, String processedPath, String thumbnailPath, long timestamp) {
+            this(-1, originalPath, processedPath, thumbnailPath, timestamp);
+        }
+
+        private HistoryItem(long id, String originalPath, String processedPath, String thumbnailPath, long timestamp) {
+            this.id = id;
             this.originalPath = originalPath;
             this.processedPath = processedPath;
             this.thumbnailPath = thumbnailPath;
             this.timestamp = timestamp;
         }
 
+        // 数据库行号，未保存的记录为 -1
+        public long getId() { return id; }
         public String getOriginalPath() { return originalPath;}
         public String getProcessedPath() { return processedPath; }
         public String getThumbnailPath() { return thumbnailPath; }
@@ -43,13 +68,12 @@ public class DocumentHistoryManager {
                     thumbnailPath.equals(other.thumbnailPath);
         }
 
-        private JSONObject toJson() throws Exception {
-            JSONObject json = new JSONObject();
-            json.put("originalPath", originalPath);  // 改名
-            json.put("processedPath", processedPath);
-            json.put("thumbnailPath", thumbnailPath);
-            json.put("timestamp", timestamp);
-            return json;
+        @Override
+        public int hashCode() {
+            int result = originalPath.hashCode();
+            result = 31 * result + processedPath.hashCode();
+            result = 31 * result + thumbnailPath.hashCode();
+            return result;
         }
 
         private static HistoryItem fromJson(JSONObject json) throws Exception {
@@ -60,95 +84,171 @@ public class DocumentHistoryManager {
                     json.getLong("timestamp")
             );
         }
+
+        private static HistoryItem fromCursor(Cursor cursor) {
+            return new HistoryItem(
+                    cursor.getLong(0),
+                    cursor.getString(1),
+                    cursor.getString(2),
+                    cursor.getString(3),
+                    cursor.getLong(4)
+            );
+        }
+
+        private ContentValues toContentValues() {
+            ContentValues values = new ContentValues();
+            values.put(HistoryDatabase.COLUMN_ORIGINAL_PATH, originalPath);
+            values.put(HistoryDatabase.COLUMN_PROCESSED_PATH, processedPath);
+            values.put(HistoryDatabase.COLUMN_THUMBNAIL_PATH, thumbnailPath);
+            values.put(HistoryDatabase.COLUMN_TIMESTAMP, timestamp);
+            return values;
+        }
     }
 
     public static boolean addHistory(@NonNull Context context, @NonNull HistoryItem item) {
         try {
-            Log.d(TAG, "Starting addHistory...");
-            List<HistoryItem> items = getAllHistory(context);
-            Log.d(TAG, "Current history size: " + items.size());
-            items.add(item);
-            saveHistory(context, items);
-            Log.d(TAG, "History saved. New size: " + items.size());
-            Log.d(TAG, "History file location: " + new File(context.getFilesDir(), HISTORY_FILE).getAbsolutePath());
-            return true;  // Success case
+            // 单行写入，相同路径的记录只更新时间戳
+            long rowId = getDatabase(context).insertWithOnConflict(HistoryDatabase.TABLE_HISTORY, null,
+                    item.toContentValues(), SQLiteDatabase.CONFLICT_REPLACE);
+            Log.d(TAG, "History added, row " + rowId);
+            return rowId != -1;
         } catch (Exception e) {
             Log.e(TAG, "Error adding history", e);
-            return false;  // Failure case
+            return false;
         }
     }
 
     public static List<HistoryItem> getAllHistory(Context context) {
-        try {
-            File file = new File(context.getFilesDir(), HISTORY_FILE);
-            Log.d(TAG, "Looking for history file at: " + file.getAbsolutePath());
-            if (!file.exists()) {
-                Log.d(TAG, "History file not found, returning empty list.");
-                return new ArrayList<>();
-            }
-
-            StringBuilder jsonStr = new StringBuilder();
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                jsonStr.append(line);
-            }
-            reader.close();
-
-            Log.d(TAG, "File read successfully, length: " + jsonStr.length());
-
-            List<HistoryItem> items = new ArrayList<>();
-            JSONArray array = new JSONArray(jsonStr.toString());
-            for (int i = 0; i < array.length(); i++) {
-                items.add(HistoryItem.fromJson(array.getJSONObject(i)));
-            }
+        return query(context, null, null, null);
+    }
 
-            Collections.sort(items, (a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
-            return items;
+    /**
+     * 分页读取历史记录，按时间从新到旧排列。
+     * after 为上一页的最后一条，为空时读取第一页。按 (时间戳, 行号) 定位，翻页期间的插入和删除不会造成重复或遗漏。
+     */
+    @NonNull
+    public static List<HistoryItem> getHistoryPage(@NonNull Context context, @Nullable HistoryItem after, int pageSize) {
+        if (after == null) {
+            return query(context, null, null, String.valueOf(pageSize));
+        }
+        String timestamp = String.valueOf(after.getTimestamp());
+        return query(context,
+                HistoryDatabase.COLUMN_TIMESTAMP + " < ? OR (" + HistoryDatabase.COLUMN_TIMESTAMP
+                        + " = ? AND " + HistoryDatabase.COLUMN_ID + " < ?)",
+                new String[]{timestamp, timestamp, String.valueOf(after.getId())},
+                String.valueOf(pageSize));
+    }
 
+    public static int getHistoryCount(@NonNull Context context) {
+        try (Cursor cursor = getDatabase(context).rawQuery(
+                "SELECT COUNT(*) FROM " + HistoryDatabase.TABLE_HISTORY, null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
         } catch (Exception e) {
-            Log.e(TAG, "Error getting history", e);
-            return new ArrayList<>();
+            Log.e(TAG, "Error counting history", e);
+            return 0;
         }
     }
 
     public static void removeHistory(Context context, HistoryItem itemToRemove) {
         try {
-            List<HistoryItem> items = getAllHistory(context);
-            items.removeIf(item -> item.equals(itemToRemove));
-            saveHistory(context, items);
+            int removed = getDatabase(context).delete(HistoryDatabase.TABLE_HISTORY,
+                    HistoryDatabase.COLUMN_ORIGINAL_PATH + " = ? AND "
+                            + HistoryDatabase.COLUMN_PROCESSED_PATH + " = ? AND "
+                            + HistoryDatabase.COLUMN_THUMBNAIL_PATH + " = ?",
+                    new String[]{itemToRemove.getOriginalPath(), itemToRemove.getProcessedPath(),
+                            itemToRemove.getThumbnailPath()});
+            Log.d(TAG, "History removed: " + removed);
         } catch (Exception e) {
             Log.e(TAG, "Error removing history", e);
         }
     }
 
+    /**
+     * 是否有历史记录（除 excludeId 这一行外）引用了该文件，作为原图、处理结果或缩略图均算。
+     * 删除文件前调用，同一文件可能同时出现在照片列表和多条历史记录里。
+     */
+    public static boolean isFileReferenced(@NonNull Context context, @NonNull String path, long excludeId) {
+        try (Cursor cursor = getDatabase(context).rawQuery(
+                "SELECT 1 FROM " + HistoryDatabase.TABLE_HISTORY + " WHERE "
+                        + HistoryDatabase.COLUMN_ID + " != ? AND ("
+                        + HistoryDatabase.COLUMN_ORIGINAL_PATH + " = ? OR "
+                        + HistoryDatabase.COLUMN_PROCESSED_PATH + " = ? OR "
+                        + HistoryDatabase.COLUMN_THUMBNAIL_PATH + " = ?) LIMIT 1",
+                new String[]{String.valueOf(excludeId), path, path, path})) {
+            return cursor.moveToFirst();
+        } catch (Exception e) {
+            // 查询失败时按仍被引用处理，宁可留下文件也不误删
+            Log.e(TAG, "Error checking file references", e);
+            return true;
+        }
+    }
 
-    private static void saveHistory(Context context, List<HistoryItem> items) {
-        try {
-            JSONArray array = new JSONArray();
-            for (HistoryItem item : items) {
-                array.put(item.toJson());
+    private static List<HistoryItem> query(Context context, String selection, String[] selectionArgs, String limit) {
+        List<HistoryItem> items = new ArrayList<>();
+        try (Cursor cursor = getDatabase(context).query(HistoryDatabase.TABLE_HISTORY, COLUMNS,
+                selection, selectionArgs, null, null, ORDER_BY_NEWEST, limit)) {
+            while (cursor.moveToNext()) {
+                items.add(HistoryItem.fromCursor(cursor));
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting history", e);
+        }
+        return items;
+    }
 
-            File file = new File(context.getFilesDir(), HISTORY_FILE);
-            Log.d(TAG, "Saving history to: " + file.getAbsolutePath());
-            Log.d(TAG, "JSON content: " + array.toString());
+    private static SQLiteDatabase getDatabase(Context context) {
+        SQLiteDatabase db = HistoryDatabase.getInstance(context).getWritableDatabase();
+        if (!migrationChecked) {
+            synchronized (DocumentHistoryManager.class) {
+                if (!migrationChecked) {
+                    migrateLegacyHistory(context, db);
+                    migrationChecked = true;
+                }
+            }
+        }
+        return db;
+    }
+
+    /**
+     * 把旧版 JSON 文件中的记录导入数据库，在一个事务内完成后删除 JSON 文件。
+     * 如果导入后、删除前进程退出，下次会重新导入，唯一约束保证不会产生重复记录。
+     */
+    private static void migrateLegacyHistory(Context context, SQLiteDatabase db) {
+        File file = new File(context.getFilesDir(), LEGACY_HISTORY_FILE);
+        if (!file.exists()) {
+            return;
+        }
 
-            // 如果文件不存在，创建新文件
-            if (!file.exists()) {
-                Log.d(TAG, "History file does not exist, creating new file.");
-            } else {
-                Log.d(TAG, "History file exists, updating file.");
+        try {
+            StringBuilder jsonStr = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    jsonStr.append(line);
+                }
             }
 
-            FileWriter writer = new FileWriter(file);
-            writer.write(array.toString());
-            writer.flush();
-            writer.close();
+            JSONArray array = new JSONArray(jsonStr.toString());
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < array.length(); i++) {
+                    HistoryItem item = HistoryItem.fromJson(array.getJSONObject(i));
+                    db.insertWithOnConflict(HistoryDatabase.TABLE_HISTORY, null,
+                            item.toContentValues(), SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
 
-            Log.d(TAG, "History file saved successfully.");
+            if (!file.delete()) {
+                Log.w(TAG, "Failed to delete legacy history file");
+            }
+            Log.d(TAG, "Migrated " + array.length() + " history records from JSON");
         } catch (Exception e) {
-            Log.e(TAG, "Error saving history", e);
+            // 保留 JSON 文件，下次启动时重试
+            Log.e(TAG, "Error migrating legacy history", e);
         }
     }
-}
\ No newline at end of file
+}
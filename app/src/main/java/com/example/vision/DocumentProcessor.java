@@ -3,21 +3,64 @@ package com.example.vision;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import org.opencv.android.Utils;
 import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DocumentProcessor {
     private static final String TAG = "DocumentProcessor";
     private static final int THUMBNAIL_SIZE = 512;
 
+    // 输出文件名的序号，同一毫秒内处理的多页不会重名
+    private static final AtomicLong OUTPUT_SEQUENCE = new AtomicLong();
+    // 不限制输出分辨率
+    public static final int NO_OUTPUT_LIMIT = 0;
+    private static final int PROCESSED_QUALITY = 95;
+    private static final int THUMBNAIL_QUALITY = 80;
+    // 结果缓存的参数签名，包含所有影响输出的常量。修改增强算法时递增版本号，旧缓存随之失效。
+    // 两种 EnhanceMode 的输出一致，因此不参与签名
+    private static final String CACHE_SIGNATURE = "enhance-v2|thumb=" + THUMBNAIL_SIZE
+            + "|q=" + PROCESSED_QUALITY + "/" + THUMBNAIL_QUALITY;
+
+    /**
+     * 增强的执行方式。两种方式输出一致，可在同一输入上对比耗时。
+     */
+    public enum EnhanceMode {
+        SINGLE_PASS,  // 整幅图在调用线程上处理
+        TILED         // 分条在多核上并行处理
+    }
+
+    private static volatile EnhanceMode defaultEnhanceMode = EnhanceMode.TILED;
+
+    public static void setDefaultEnhanceMode(@NonNull EnhanceMode mode) {
+        defaultEnhanceMode = mode;
+    }
+
+    private static volatile int maxOutputSize = NO_OUTPUT_LIMIT;
+
+    /**
+     * 设置输出长边上限（像素）。默认不限制，按原图分辨率输出。
+     * 设置后，透视变换后长边超过上限的页面会在解码阶段按 2 的幂降采样，采样后长边仍不低于上限；
+     * 用于内存紧张的设备。上限参与结果缓存的签名，修改后不会命中按其他上限生成的旧结果。
+     *
+     * @param maxSize 长边上限，{@link #NO_OUTPUT_LIMIT} 表示不限制
+     */
+    public static void setMaxOutputSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be >= 0");
+        }
+        maxOutputSize = maxSize;
+    }
+
     public static class DocumentResult {
         public final String processedPath;
         public final String thumbnailPath;
@@ -29,6 +72,11 @@ public class DocumentProcessor {
     }
 
     public static DocumentResult processDocument(@NonNull Context context, @NonNull Uri sourceUri, @NonNull PointF[] corners) throws IOException {
+        return processDocument(context, sourceUri, corners, defaultEnhanceMode);
+    }
+
+    public static DocumentResult processDocument(@NonNull Context context, @NonNull Uri sourceUri,
+                                                 @NonNull PointF[] corners, @NonNull EnhanceMode mode) throws IOException {
         File processedDir = new File(context.getFilesDir(), "documents");
         File thumbnailDir = new File(context.getFilesDir(), "thumbnails");
 
@@ -39,66 +87,213 @@ public class DocumentProcessor {
             throw new IOException("Cannot create thumbnail directory");
         }
 
+        // 每次调用都返回新的文件名，调用方独占结果文件，可以随时删除
+        String name = System.currentTimeMillis() + "_" + OUTPUT_SEQUENCE.incrementAndGet();
+        File processedFile = new File(processedDir, "SCAN_" + name + ".jpg");
+        File thumbnailFile = new File(thumbnailDir, "THUMB_" + name + ".jpg");
+
+        // 同一源图、同一裁剪再次处理时直接链接已有结果
+        ProcessedImageCache cache = ProcessedImageCache.getInstance(context);
+        int maxSize = maxOutputSize;
+        String cacheKey = cache.computeKey(sourceUri, corners, CACHE_SIGNATURE + "|max=" + maxSize);
+        DocumentResult cached = cache.get(cacheKey, processedFile, thumbnailFile);
+        if (cached != null) {
+            Log.d(TAG, "Cache hit for " + sourceUri + ": " + cached.processedPath);
+            return cached;
+        }
+
+        MatWorkspace workspace = MatWorkspace.getInstance();
+        ProcessingStats stats = ProcessingStats.start("processDocument[" + mode + "]");
         Mat originalMat = null;
         Mat transformedMat = null;
-        Bitmap resultBitmap = null;
+        Mat enhancedMat = null;
+        Mat thumbnailMat = null;
 
         try {
-            // 使用 ContentResolver 加载图片
-            Bitmap originalBitmap;
-            try (InputStream inputStream = context.getContentResolver().openInputStream(sourceUri)) {
-                if (inputStream == null) {
-                    throw new IOException("Failed to open input stream");
-                }
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                originalBitmap = BitmapFactory.decodeStream(inputStream, null, options);
-            }
-
-            if (originalBitmap == null) {
-                throw new IOException("Failed to decode image");
-            }
+            // 只解码角点外接矩形内的区域，并按输出分辨率选择采样率
+            DecodedRegion region = decodeRegion(context, sourceUri, corners, maxSize);
+            Bitmap originalBitmap = region.bitmap;
+            stats.frameCopy("decode");
 
             // 转换为OpenCV Mat
-            originalMat = new Mat();
+            originalMat = workspace.acquire(originalBitmap.getHeight(), originalBitmap.getWidth(), CvType.CV_8UC4);
             Utils.bitmapToMat(originalBitmap, originalMat);
             originalBitmap.recycle();
+            stats.frameCopy("bitmapToMat");
 
             // 执行透视变换
-            transformedMat = performPerspectiveTransform(originalMat, corners);
+            transformedMat = performPerspectiveTransform(originalMat, region.corners, workspace);
+            workspace.recycle(originalMat);
+            originalMat = null;
+            stats.frameCopy("warp");
+
+            // 执行文档增强，输出为 BGR，可直接交给编码器
+            enhancedMat = workspace.acquire(transformedMat.rows(), transformedMat.cols(), CvType.CV_8UC3);
+            boolean enhanced = enhanceDocument(transformedMat, enhancedMat, workspace, mode, stats);
+            workspace.recycle(transformedMat);
+            transformedMat = null;
+
+            // 先写临时文件再重命名，失败时不会留下半写的结果
+            File processedTemp = new File(processedDir, "SCAN_" + name + ".tmp.jpg");
+            File thumbnailTemp = new File(thumbnailDir, "THUMB_" + name + ".tmp.jpg");
+
+            try {
+                // 保存处理后的图片
+                writeJpeg(enhancedMat, processedTemp, PROCESSED_QUALITY);
+                stats.frameCopy("encode");
+
+                // 创建并保存缩略图
+                thumbnailMat = createThumbnail(enhancedMat, workspace);
+                writeJpeg(thumbnailMat, thumbnailTemp, THUMBNAIL_QUALITY);
+            } catch (IOException | RuntimeException e) {
+                processedTemp.delete();
+                thumbnailTemp.delete();
+                throw e;
+            }
 
-            // 执行文档增强
-            Mat enhancedMat = enhanceDocument(transformedMat);
+            commitFile(processedTemp, processedFile);
+            commitFile(thumbnailTemp, thumbnailFile);
 
-            // 转换回Bitmap
-            resultBitmap = Bitmap.createBitmap(
-                    enhancedMat.cols(),
-                    enhancedMat.rows(),
-                    Bitmap.Config.ARGB_8888
-            );
-            Utils.matToBitmap(enhancedMat, resultBitmap);
-            enhancedMat.release();
+            DocumentResult result = new DocumentResult(processedFile.getAbsolutePath(), thumbnailFile.getAbsolutePath());
+            // 增强失败时输出的是未增强的图像，不缓存，下次处理同一页时重新增强
+            if (enhanced) {
+                cache.put(cacheKey, result);
+            }
+            return result;
 
-            // 保存处理后的图片
-            String timestamp = String.valueOf(System.currentTimeMillis());
-            File processedFile = new File(processedDir, "SCAN_" + timestamp + ".jpg");
-            File thumbnailFile = new File(thumbnailDir, "THUMB_" + timestamp + ".jpg");
+        } finally {
+            // 归还工作区缓冲区，供下一页复用
+            workspace.recycle(originalMat);
+            workspace.recycle(transformedMat);
+            workspace.recycle(enhancedMat);
+            workspace.recycle(thumbnailMat);
+            stats.finish(TAG);
+        }
+    }
 
-            // 保存处理后的图片
-            saveImage(resultBitmap, processedFile, 95);
+    private static void commitFile(@NonNull File tempFile, @NonNull File target) throws IOException {
+        if (!tempFile.renameTo(target)) {
+            tempFile.delete();
+            throw new IOException("Failed to move " + tempFile.getName() + " to " + target.getName());
+        }
+    }
 
-            // 创建并保存缩略图
-            Bitmap thumbnailBitmap = createThumbnail(resultBitmap);
-            saveImage(thumbnailBitmap, thumbnailFile, 80);
-            thumbnailBitmap.recycle();
+    /**
+     * 区域解码的结果，角点已换算到解码后位图的坐标系。
+     */
+    private static class DecodedRegion {
+        final Bitmap bitmap;
+        final PointF[] corners;
 
-            return new DocumentResult(processedFile.getAbsolutePath(), thumbnailFile.getAbsolutePath());
+        DecodedRegion(Bitmap bitmap, PointF[] corners) {
+            this.bitmap = bitmap;
+            this.corners = corners;
+        }
+    }
 
-        } finally {
-            if (originalMat != null) originalMat.release();
-            if (transformedMat != null) transformedMat.release();
-            if (resultBitmap != null) resultBitmap.recycle();
+    @SuppressWarnings("deprecation")
+    private static DecodedRegion decodeRegion(@NonNull Context context, @NonNull Uri sourceUri,
+                                              @NonNull PointF[] corners, int maxSize) throws IOException {
+        // 先只读取尺寸
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream inputStream = openStream(context, sourceUri)) {
+            BitmapFactory.decodeStream(inputStream, null, bounds);
+        }
+        int imageWidth = bounds.outWidth;
+        int imageHeight = bounds.outHeight;
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            throw new IOException("Failed to decode image");
+        }
+
+        // 角点的外接矩形，多留 1 像素供插值使用
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (PointF corner : corners) {
+            minX = Math.min(minX, corner.x);
+            minY = Math.min(minY, corner.y);
+            maxX = Math.max(maxX, corner.x);
+            maxY = Math.max(maxY, corner.y);
+        }
+        Rect rect = new Rect(
+                Math.max(0, (int) Math.floor(minX) - 1),
+                Math.max(0, (int) Math.floor(minY) - 1),
+                Math.min(imageWidth, (int) Math.ceil(maxX) + 1),
+                Math.min(imageHeight, (int) Math.ceil(maxY) + 1));
+        if (rect.width() <= 0 || rect.height() <= 0) {
+            rect.set(0, 0, imageWidth, imageHeight);
+        }
+
+        // 设置了输出上限且长边超过上限时按 2 的幂降采样，采样后仍不低于上限
+        int sampleSize = 1;
+        if (maxSize != NO_OUTPUT_LIMIT) {
+            double[] outputSize = calculateOutputSize(corners);
+            double outputEdge = Math.max(outputSize[0], outputSize[1]);
+            while (outputEdge / (sampleSize * 2) >= maxSize) {
+                sampleSize *= 2;
+            }
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inSampleSize = sampleSize;
+
+        Bitmap bitmap = null;
+        try (InputStream inputStream = openStream(context, sourceUri)) {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(inputStream, false);
+            try {
+                bitmap = decoder.decodeRegion(rect, options);
+            } finally {
+                decoder.recycle();
+            }
+        } catch (IOException e) {
+            // 不支持区域解码的格式，退回到整图解码
+            Log.w(TAG, "Region decode not supported, decoding full image: " + e.getMessage());
+        }
+
+        if (bitmap == null) {
+            try (InputStream inputStream = openStream(context, sourceUri)) {
+                bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+            }
+            if (bitmap == null) {
+                throw new IOException("Failed to decode image");
+            }
+            rect.set(0, 0, imageWidth, imageHeight);
+        }
+
+        // 把角点换算到解码结果的坐标系
+        float scaleX = (float) bitmap.getWidth() / rect.width();
+        float scaleY = (float) bitmap.getHeight() / rect.height();
+        PointF[] localCorners = new PointF[corners.length];
+        for (int i = 0; i < corners.length; i++) {
+            localCorners[i] = new PointF(
+                    (corners[i].x - rect.left) * scaleX,
+                    (corners[i].y - rect.top) * scaleY);
+        }
+
+        Log.d(TAG, String.format("Decoded region %s of %dx%d at 1/%d -> %dx%d",
+                rect.toShortString(), imageWidth, imageHeight, sampleSize,
+                bitmap.getWidth(), bitmap.getHeight()));
+        return new DecodedRegion(bitmap, localCorners);
+    }
+
+    private static InputStream openStream(@NonNull Context context, @NonNull Uri uri) throws IOException {
+        InputStream inputStream = context.getContentResolver().openInputStream(uri);
+        if (inputStream == null) {
+            throw new IOException("Failed to open input stream");
         }
+        return inputStream;
+    }
+
+    // 计算透视变换后的目标宽高，corners的顺序是：左上、左下、右下、右上
+    private static double[] calculateOutputSize(@NonNull PointF[] corners) {
+        double width = Math.max(
+                calculateDistance(corners[0].x, corners[0].y, corners[3].x, corners[3].y),
+                calculateDistance(corners[1].x, corners[1].y, corners[2].x, corners[2].y));
+        double height = Math.max(
+                calculateDistance(corners[0].x, corners[0].y, corners[1].x, corners[1].y),
+                calculateDistance(corners[3].x, corners[3].y, corners[2].x, corners[2].y));
+        return new double[]{width, height};
     }
 
     public static String processThumbnail(@NonNull Context context, @NonNull String originalPath, @NonNull String thumbnailPath) throws IOException {
@@ -122,7 +317,8 @@ public class DocumentProcessor {
         }
     }
 
-    private static Mat performPerspectiveTransform(@NonNull Mat source, @NonNull PointF[] corners) {
+    private static Mat performPerspectiveTransform(@NonNull Mat source, @NonNull PointF[] corners,
+                                                   @NonNull MatWorkspace workspace) {
         // corners的顺序是：左上、左下、右下、右上
         Point[] sourcePoints = new Point[4];
         sourcePoints[0] = new Point(corners[0].x, corners[0].y);  // 左上
@@ -154,7 +350,8 @@ public class DocumentProcessor {
         MatOfPoint2f destinationMat = new MatOfPoint2f(destinationPoints);
 
         Mat perspectiveTransform = Imgproc.getPerspectiveTransform(sourceMat, destinationMat);
-        Mat result = new Mat();
+        // warpPerspective 会按 dsize 截断为整数，目标缓冲区按相同尺寸从工作区借用
+        Mat result = workspace.acquire((int) height, (int) width, source.type());
         Imgproc.warpPerspective(source, result, perspectiveTransform, new Size(width, height));
 
         perspectiveTransform.release();
@@ -165,99 +362,166 @@ public class DocumentProcessor {
     }
 
 
-    private static Mat enhanceDocument(@NonNull Mat source) {
-        Mat result = source.clone();
-        Log.d(TAG, "Starting document enhancement");
+    /**
+     * 增强参数。全部由整幅灰度图的均值和标准差决定，只有亮度偏移还依赖 CLAHE 之后的 L 均值。
+     */
+    static class EnhanceParams {
+        final double mean;
+        final double std;
+        final int sigmaColor;
+        final double claheClipLimit;
+        final double brightnessFactor;
+        final double brightnessScale;
+        final double sharpenSigma;
+        final double sharpAmount;
+        final double finalAlpha;
+        final double finalBeta;
+
+        EnhanceParams(double mean, double std) {
+            this.mean = mean;
+            this.std = std;
+            // 调整 bilateral filter 参数基于整体亮度
+            sigmaColor = mean > 200 ? 40 : 60;
+            // 根据整体亮度调整CLAHE参数
+            claheClipLimit = mean > 200 ? 2 :
+                    mean > 150 ? 2.2 : 2.5;
+            brightnessFactor = mean > 200 ? 1.1 :
+                    mean < 100 ? 1.4 : 1.3;
+            brightnessScale = mean > 180 ? 0.5 : 0.7;
+            sharpenSigma = std < 30 ? 2.5 : 2.0; // 低对比度图像使用更大的sigma
+            sharpAmount = mean > 200 ? 1.4 :
+                    mean < 100 ? 1.9 : 1.7;
+            finalAlpha = mean > 180 ? 1.1 :
+                    mean < 100 ? 1.3 : 1.2;
+            finalBeta = mean > 180 ? -10 :
+                    mean < 100 ? 10 : 0;
+        }
+
+        double brightnessOffset(double lMean) {
+            return 128 - lMean * brightnessScale;
+        }
+    }
+
+    /**
+     * 在整幅灰度图上统计亮度均值和标准差，决定增强参数。
+     * 参数在阈值两侧跳变，缩小的代理图无法保证落在同一档，为保证输出逐字节一致只在全分辨率上统计；
+     * 原先计算后从未使用的 50x50 boxFilter 已去掉。
+     */
+    static EnhanceParams analyzeBrightness(@NonNull Mat bgr, @NonNull MatWorkspace workspace) {
+        MatOfDouble meanMat = new MatOfDouble();
+        MatOfDouble stdMat = new MatOfDouble();
+        Mat gray = workspace.acquire(bgr.rows(), bgr.cols(), CvType.CV_8UC1);
+        try {
+            Imgproc.cvtColor(bgr, gray, Imgproc.COLOR_BGR2GRAY);
+            Core.meanStdDev(gray, meanMat, stdMat);
+            double mean = meanMat.get(0, 0)[0];
+            double std = stdMat.get(0, 0)[0];
+            Log.d(TAG, "Initial image statistics - Mean: " + mean + ", Std: " + std);
+            return new EnhanceParams(mean, std);
+        } finally {
+            workspace.recycle(gray);
+            meanMat.release();
+            stdMat.release();
+        }
+    }
+
+    /**
+     * 增强透视变换后的 RGBA 图像，BGR 结果写入 bgr。
+     * OpenCV 出错时 bgr 为未增强的图像并返回 false；线程被中断时抛出 InterruptedIOException。
+     * 整条流水线都按 BGR 顺序处理：双边滤波与通道顺序无关，Lab 转换结果也相同，
+     * 这样最终的工作缓冲区就是编码器的输入，省去转回 RGBA 和复制到 Bitmap 两次整幅拷贝。
+     */
+    private static boolean enhanceDocument(@NonNull Mat source, @NonNull Mat bgr, @NonNull MatWorkspace workspace,
+                                           @NonNull EnhanceMode mode, @NonNull ProcessingStats stats)
+            throws IOException {
+        Log.d(TAG, "Starting document enhancement, mode: " + mode);
 
         try {
             // 首先确保颜色空间正确
-            Imgproc.cvtColor(result, result, Imgproc.COLOR_RGBA2RGB);
-
-            // 1. 分析图像整体亮度分布
-            Mat grayForAnalysis = new Mat();
-            Imgproc.cvtColor(result, grayForAnalysis, Imgproc.COLOR_RGB2GRAY);
-            MatOfDouble meanMat = new MatOfDouble();
-            MatOfDouble stdMat = new MatOfDouble();
-            Core.meanStdDev(grayForAnalysis, meanMat, stdMat);
-            double initialMean = meanMat.get(0, 0)[0];
-            double initialStd = stdMat.get(0, 0)[0];
-            Log.d(TAG, "Initial image statistics - Mean: " + initialMean + ", Std: " + initialStd);
-
-            // 2. 计算局部均值
-            Mat localMean = new Mat();
-            Imgproc.boxFilter(grayForAnalysis, localMean, -1, new Size(50, 50)); // 使用更大的窗口
-
-            // 3. 创建并应用自适应增强
-            Mat denoised = new Mat();
-            // 调整 bilateral filter 参数基于整体亮度
-            int sigmaColor = initialMean > 200 ? 40 : 60;
-            Imgproc.bilateralFilter(result, denoised, 9, sigmaColor, 60);
-            Log.d(TAG, "Bilateral filter applied with sigmaColor: " + sigmaColor);
+            Imgproc.cvtColor(source, bgr, Imgproc.COLOR_RGBA2BGR);
+            stats.frameCopy("RGBA2BGR");
+
+            // 分析图像整体亮度分布
+            EnhanceParams params = analyzeBrightness(bgr, workspace);
 
-            // 4. 转换到LAB色彩空间并增强
-            Imgproc.cvtColor(denoised, denoised, Imgproc.COLOR_RGB2Lab);
-            List<Mat> channels = new ArrayList<>();
-            Core.split(denoised, channels);
+            if (mode == EnhanceMode.TILED) {
+                TiledEnhancer.getInstance().enhance(bgr, params, workspace, stats);
+            } else {
+                enhanceSinglePass(bgr, params, workspace, stats);
+            }
+            Log.d(TAG, "Enhancement completed successfully");
 
-            // 处理L通道
-            Mat l = channels.get(0);
+            return true;
+        } catch (InterruptedException e) {
+            // 条带任务都已结束，bgr 不再被写入；中断交给调用方，不回退为未增强的图像
+            throw (IOException) new InterruptedIOException("Document enhancement interrupted").initCause(e);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in enhanceDocument: " + e.getMessage(), e);
+            Imgproc.cvtColor(source, bgr, Imgproc.COLOR_RGBA2BGR);
+            return false;
+        }
+    }
+
+    /**
+     * 整幅图单线程增强，就地写回 bgr。
+     */
+    private static void enhanceSinglePass(@NonNull Mat bgr, @NonNull EnhanceParams params,
+                                          @NonNull MatWorkspace workspace, @NonNull ProcessingStats stats) {
+        int rows = bgr.rows();
+        int cols = bgr.cols();
+
+        // 每个阶段只保留一个工作缓冲区，均从工作区借用
+        Mat l = workspace.acquire(rows, cols, CvType.CV_8UC1);
+        Mat denoised = workspace.acquire(rows, cols, CvType.CV_8UC3);
+        Mat blurred = workspace.acquire(rows, cols, CvType.CV_8UC3);
+        MatOfDouble meanMat = new MatOfDouble();
+        MatOfDouble stdMat = new MatOfDouble();
+
+        try {
+            // 1. 创建并应用自适应增强
+            Imgproc.bilateralFilter(bgr, denoised, 9, params.sigmaColor, 60);
+            stats.frameCopy("bilateral");
+            Log.d(TAG, "Bilateral filter applied with sigmaColor: " + params.sigmaColor);
+
+            // 2. 转换到LAB色彩空间并增强
+            Imgproc.cvtColor(denoised, denoised, Imgproc.COLOR_BGR2Lab);
+
+            // 只处理L通道
+            Core.extractChannel(denoised, l, 0);
+            stats.frameCopy("extractL");
             Imgproc.GaussianBlur(l, l, new Size(3, 3), 0);
 
-            // 根据局部亮度调整CLAHE参数
-            double claheClipLimit = initialMean > 200 ? 2 :
-                    initialMean > 150 ? 2.2 : 2.5;
-            Log.d(TAG, "CLAHE clip limit: " + claheClipLimit);
-            Imgproc.createCLAHE(claheClipLimit, new Size(8, 8)).apply(l, l);
+            Log.d(TAG, "CLAHE clip limit: " + params.claheClipLimit);
+            Imgproc.createCLAHE(params.claheClipLimit, new Size(8, 8)).apply(l, l);
 
-            // 自适应亮度调整
+            // 自适应亮度调整，偏移量依赖 CLAHE 之后的整幅 L 均值，必须在全分辨率上计算
             Core.meanStdDev(l, meanMat, stdMat);
-            double lMean = meanMat.get(0, 0)[0];
-            double brightnessFactor = initialMean > 200 ? 1.1 :
-                    initialMean < 100 ? 1.4 : 1.3;
-            double brightnessOffset = 128 - lMean * (initialMean > 180 ? 0.5 : 0.7);
-            Log.d(TAG, "Brightness adjustment - Factor: " + brightnessFactor + ", Offset: " + brightnessOffset);
-            Core.convertScaleAbs(l, l, brightnessFactor, brightnessOffset);
-
-            // 合并通道
-            Core.merge(channels, denoised);
-            Imgproc.cvtColor(denoised, denoised, Imgproc.COLOR_Lab2RGB);
-
-            // 5. 自适应锐化
-            Mat blurred = new Mat();
-            double sigma = initialStd < 30 ? 2.5 : 2.0; // 低对比度图像使用更大的sigma
-            Imgproc.GaussianBlur(denoised, blurred, new Size(0, 0), sigma);
-            double sharpAmount = initialMean > 200 ? 1.4 :
-                    initialMean < 100 ? 1.9 : 1.7;
-            Log.d(TAG, "Sharpening - Amount: " + sharpAmount + ", Sigma: " + sigma);
-            Core.addWeighted(denoised, sharpAmount, blurred, -(sharpAmount-1), 0, result);
-
-            // 6. 最终亮度调整
-            double finalAlpha = initialMean > 180 ? 1.1 :
-                    initialMean < 100 ? 1.3 : 1.2;
-            double finalBeta = initialMean > 180 ? -10 :
-                    initialMean < 100 ? 10 : 0;
-            Log.d(TAG, "Final adjustment - Alpha: " + finalAlpha + ", Beta: " + finalBeta);
-            Core.convertScaleAbs(result, result, finalAlpha, finalBeta);
-
-            // 转换回RGBA
-            Imgproc.cvtColor(result, result, Imgproc.COLOR_RGB2RGBA);
-            Log.d(TAG, "Enhancement completed successfully");
-
-            // 释放资源
-            grayForAnalysis.release();
-            localMean.release();
+            double brightnessOffset = params.brightnessOffset(meanMat.get(0, 0)[0]);
+            Log.d(TAG, "Brightness adjustment - Factor: " + params.brightnessFactor + ", Offset: " + brightnessOffset);
+            Core.convertScaleAbs(l, l, params.brightnessFactor, brightnessOffset);
+
+            // 写回L通道
+            Core.insertChannel(l, denoised, 0);
+            stats.frameCopy("insertL");
+            Imgproc.cvtColor(denoised, denoised, Imgproc.COLOR_Lab2BGR);
+
+            // 3. 自适应锐化
+            Imgproc.GaussianBlur(denoised, blurred, new Size(0, 0), params.sharpenSigma);
+            stats.frameCopy("sharpenBlur");
+            Log.d(TAG, "Sharpening - Amount: " + params.sharpAmount + ", Sigma: " + params.sharpenSigma);
+            Core.addWeighted(denoised, params.sharpAmount, blurred, -(params.sharpAmount - 1), 0, bgr);
+            stats.frameCopy("sharpen");
+
+            // 4. 最终亮度调整
+            Log.d(TAG, "Final adjustment - Alpha: " + params.finalAlpha + ", Beta: " + params.finalBeta);
+            Core.convertScaleAbs(bgr, bgr, params.finalAlpha, params.finalBeta);
+        } finally {
+            // 归还资源
+            workspace.recycle(l);
+            workspace.recycle(denoised);
+            workspace.recycle(blurred);
             meanMat.release();
             stdMat.release();
-            blurred.release();
-            denoised.release();
-            for (Mat channel : channels) {
-                channel.release();
-            }
-
-            return result;
-        } catch (Exception e) {
-            Log.e(TAG, "Error in enhanceDocument: " + e.getMessage(), e);
-            return source.clone();
         }
     }
 
@@ -265,6 +529,28 @@ public class DocumentProcessor {
         return Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
     }
 
+    private static Mat createThumbnail(@NonNull Mat source, @NonNull MatWorkspace workspace) {
+        int width = source.cols();
+        int height = source.rows();
+        float ratio = Math.min((float) THUMBNAIL_SIZE / width, (float) THUMBNAIL_SIZE / height);
+        int thumbnailWidth = Math.max(1, Math.round(width * ratio));
+        int thumbnailHeight = Math.max(1, Math.round(height * ratio));
+        Mat thumbnail = workspace.acquire(thumbnailHeight, thumbnailWidth, source.type());
+        Imgproc.resize(source, thumbnail, new Size(thumbnailWidth, thumbnailHeight), 0, 0, Imgproc.INTER_AREA);
+        return thumbnail;
+    }
+
+    private static void writeJpeg(@NonNull Mat bgr, @NonNull File file, int quality) throws IOException {
+        MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+        try {
+            if (!Imgcodecs.imwrite(file.getAbsolutePath(), bgr, params)) {
+                throw new IOException("Failed to encode image: " + file.getPath());
+            }
+        } finally {
+            params.release();
+        }
+    }
+
     private static Bitmap createThumbnail(@NonNull Bitmap original) {
         int width = original.getWidth();
         int height = original.getHeight();
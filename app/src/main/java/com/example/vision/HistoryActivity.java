@@ -2,22 +2,28 @@ package com.example.vision;
 import androidx.activity.OnBackPressedCallback;
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
-import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Collections;
 
 public class HistoryActivity extends AppCompatActivity implements HistoryAdapter.HistoryActionListener {
     private static final String TAG = "HistoryActivity";
+    // 距离末尾还剩这么多条时开始加载下一页
+    private static final int PREFETCH_DISTANCE = 10;
+    // 向滑动方向预加载的缩略图数量
+    private static final int PRELOAD_THUMBNAILS = 12;
 
     // UI组件
     private RecyclerView recyclerView;
@@ -28,6 +34,7 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
     private MaterialButton cancelSelectionButton;
     private View selectionControls;
     private HistoryAdapter adapter;
+    private HistoryPager pager;
 
     private boolean isSelectionMode = false;
 
@@ -71,10 +78,26 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         recyclerView.setLayoutManager(layoutManager);
 
-        adapter = new HistoryAdapter(this);
+        int thumbnailSize = getResources().getDimensionPixelSize(R.dimen.history_thumbnail_size);
+        RequestManager requestManager = Glide.with(this);
+        adapter = new HistoryAdapter(this, requestManager, thumbnailSize);
+        recyclerView.setHasFixedSize(true);
         recyclerView.setAdapter(adapter);
 
+        // 提前解码即将滑入屏幕的缩略图
+        recyclerView.addOnScrollListener(new RecyclerViewPreloader<>(requestManager, adapter,
+                new FixedPreloadSizeProvider<>(thumbnailSize, thumbnailSize), PRELOAD_THUMBNAILS));
 
+        // 接近列表末尾时在后台加载下一页
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (pager != null && lastVisible >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    pager.loadNextPage();
+                }
+            }
+        });
     }
 
     private void setupClickListeners() {
@@ -90,12 +113,14 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
         // 选择按钮
         selectButton.setOnClickListener(v -> enterSelectionMode());
 
-        // 全选按钮
-        selectAllButton.setOnClickListener(v -> adapter.selectAll());
+        // 全选按钮，先加载剩余分页再全选
+        selectAllButton.setOnClickListener(v -> pager.loadAll(() -> {
+            if (adapter != null) adapter.selectAll();
+        }));
 
         // 删除选中项按钮
         deleteSelectedButton.setOnClickListener(v -> {
-            List<HistoryAdapter.HistoryItem> selectedItems = adapter.getSelectedItems();
+            List<DocumentHistoryManager.HistoryItem> selectedItems = adapter.getSelectedItems();
             if (!selectedItems.isEmpty()) {
                 showDeleteConfirmDialog(selectedItems);
             }
@@ -106,27 +131,17 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
     }
 
     private void loadHistoryData() {
-        try {
-            List<DocumentHistoryManager.HistoryItem> historyItems =
-                    DocumentHistoryManager.getAllHistory(this);
-
-            List<HistoryAdapter.HistoryItem> adapterItems = new ArrayList<>();
-            for (DocumentHistoryManager.HistoryItem item : historyItems) {
-                adapterItems.add(new HistoryAdapter.HistoryItem(
-                        item.getOriginalPath(),
-                        item.getProcessedPath(),
-                        item.getThumbnailPath(),
-                        item.getTimestamp()
-                ));
-            }
-
-            adapter.updateItems(adapterItems);
-            updateEmptyView(!adapterItems.isEmpty());
+        pager = new HistoryPager(this, (items, endReached) -> {
+            if (adapter == null) return;
+            adapter.submitList(items);
+            updateEmptyView(!items.isEmpty());
 
-        } catch (Exception e) {
-            Log.e(TAG, "加载历史记录失败", e);
-            Toast.makeText(this, getString(R.string.load_history_failed), Toast.LENGTH_SHORT).show();
-        }
+            // 如果在选择模式下，并且没有剩余项目，退出选择模式
+            if (isSelectionMode && items.isEmpty()) {
+                exitSelectionMode();
+            }
+        });
+        pager.refresh();
     }
 
     private void enterSelectionMode() {
@@ -144,7 +159,7 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
     }
 
     @Override
-    public void onItemClick(HistoryAdapter.HistoryItem item) {
+    public void onItemClick(DocumentHistoryManager.HistoryItem item) {
         Intent intent = new Intent(this, CompareActivity.class);
         intent.putExtra("originalPath", item.getOriginalPath());
         intent.putExtra("processedPath", item.getProcessedPath());
@@ -152,7 +167,7 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
     }
 
     @Override
-    public void onDeleteClick(HistoryAdapter.HistoryItem item) {
+    public void onDeleteClick(DocumentHistoryManager.HistoryItem item) {
         // 直接删除，不再弹窗确认
         deleteHistoryItems(Collections.singletonList(item));
     }
@@ -163,7 +178,7 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
         deleteSelectedButton.setEnabled(selectedCount > 0);
     }
 
-    private void showDeleteConfirmDialog(List<HistoryAdapter.HistoryItem> items) {
+    private void showDeleteConfirmDialog(List<DocumentHistoryManager.HistoryItem> items) {
         new MaterialAlertDialogBuilder(this)
                 .setTitle(R.string.delete_confirm_title)
                 .setMessage(getString(R.string.delete_multiple_confirm_message, items.size()))
@@ -173,56 +188,20 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
     }
 
 
-    private void deleteHistoryItems(List<HistoryAdapter.HistoryItem> items) {
-        boolean allSuccess = true;
-        int deletedCount = 0;
-
-        for (HistoryAdapter.HistoryItem item : items) {
-            try {
-                // 删除文件
-                boolean originalDeleted = new File(item.getOriginalPath()).delete();
-                boolean processedDeleted = new File(item.getProcessedPath()).delete();
-                boolean thumbnailDeleted = new File(item.getThumbnailPath()).delete();
-
-                if (originalDeleted && processedDeleted && thumbnailDeleted) {
-                    // 从历史记录管理器中删除
-                    DocumentHistoryManager.removeHistory(this,
-                            new DocumentHistoryManager.HistoryItem(
-                                    item.getOriginalPath(),
-                                    item.getProcessedPath(),
-                                    item.getThumbnailPath(),
-                                    item.getTimestamp()
-                            )
-                    );
-                    deletedCount++;
-                } else {
-                    allSuccess = false;
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "删除文件失败", e);
-                allSuccess = false;
-            }
-        }
-
-        // 从适配器中移除
-        adapter.removeItems(items);
-
-        // 检查是否需要显示空视图
-        updateEmptyView(adapter.getItemCount() > 0);
-
-        // 如果在选择模式下，并且没有剩余项目，退出选择模式
-        if (isSelectionMode && adapter.getItemCount() == 0) {
-            exitSelectionMode();
-        }
+    private void deleteHistoryItems(List<DocumentHistoryManager.HistoryItem> items) {
+        // 文件和记录在后台删除，完成后列表按差异更新
+        pager.delete(items, (deletedCount, requestedCount) -> {
+            if (adapter == null) return;
 
-        // 显示删除结果
-        if (allSuccess) {
-            Toast.makeText(this, getString(R.string.delete_success, deletedCount),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(this, getString(R.string.delete_partial_success, deletedCount),
-                    Toast.LENGTH_SHORT).show();
-        }
+            // 显示删除结果
+            if (deletedCount == requestedCount) {
+                Toast.makeText(this, getString(R.string.delete_success, deletedCount),
+                        Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, getString(R.string.delete_partial_success, deletedCount),
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void updateEmptyView(boolean hasData) {
@@ -243,6 +222,9 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (pager != null) {
+            pager.shutdown();
+        }
         recyclerView.setAdapter(null);
         adapter = null;
     }
@@ -1,6 +1,6 @@
 package com.example.vision;
 
-import android.content.Intent;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,27 +9,53 @@ import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
-import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.signature.ObjectKey;
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import android.content.Context;
 
-public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHolder> {
-    private final List<HistoryItem> historyItems = new ArrayList<>();
+public class HistoryAdapter extends ListAdapter<DocumentHistoryManager.HistoryItem, HistoryAdapter.HistoryViewHolder>
+        implements ListPreloader.PreloadModelProvider<DocumentHistoryManager.HistoryItem> {
+    // 用数据库行号作为身份，路径和时间戳都相同才视为内容未变
+    private static final DiffUtil.ItemCallback<DocumentHistoryManager.HistoryItem> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<DocumentHistoryManager.HistoryItem>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull DocumentHistoryManager.HistoryItem oldItem,
+                                               @NonNull DocumentHistoryManager.HistoryItem newItem) {
+                    return oldItem.getId() == newItem.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull DocumentHistoryManager.HistoryItem oldItem,
+                                                  @NonNull DocumentHistoryManager.HistoryItem newItem) {
+                    return oldItem.equals(newItem) && oldItem.getTimestamp() == newItem.getTimestamp();
+                }
+            };
+
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
     private boolean isSelectionMode = false;
-    private final HashSet<Integer> selectedItems = new HashSet<>();
+    // 选中状态按行号保存，分页追加或删除导致位置变化时不会错位
+    private final HashSet<Long> selectedIds = new HashSet<>();
     private final HistoryActionListener listener;
+    private final RequestManager requestManager;
+    private final int thumbnailSize;
     private SwipeLayout lastOpenedLayout;
 
     public interface HistoryActionListener {
-        void onItemClick(HistoryItem item);
-        void onDeleteClick(HistoryItem item);
+        void onItemClick(DocumentHistoryManager.HistoryItem item);
+        void onDeleteClick(DocumentHistoryManager.HistoryItem item);
         void onSelectionChanged(int selectedCount);
     }
 
@@ -52,27 +78,14 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryV
         }
     }
 
-    public static class HistoryItem {
-        private final String originalPath;
-        private final String processedPath;
-        private final String thumbnailPath;
-        private final long timestamp;
-
-        public HistoryItem(String originalPath, String processedPath, String thumbnailPath, long timestamp) {
-            this.originalPath = originalPath;
-            this.processedPath = processedPath;
-            this.thumbnailPath = thumbnailPath;
-            this.timestamp = timestamp;
-        }
-
-        public String getOriginalPath() { return originalPath; }
-        public String getProcessedPath() { return processedPath; }
-        public String getThumbnailPath() { return thumbnailPath; }
-        public long getTimestamp() { return timestamp; }
-    }
-
-    public HistoryAdapter(HistoryActionListener listener) {
+    /**
+     * @param thumbnailSize 缩略图控件的边长（像素），解码尺寸与之一致
+     */
+    public HistoryAdapter(HistoryActionListener listener, RequestManager requestManager, int thumbnailSize) {
+        super(DIFF_CALLBACK);
         this.listener = listener;
+        this.requestManager = requestManager;
+        this.thumbnailSize = thumbnailSize;
     }
 
     @NonNull
@@ -85,32 +98,24 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryV
 
     @Override
     public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position) {
-        HistoryItem item = historyItems.get(position);
+        DocumentHistoryManager.HistoryItem item = getItem(position);
 
-        // 加载原始图片（处理前）
-        Glide.with(holder.thumbnailImage)
-                .load(new File(item.getOriginalPath()))
-                .centerCrop()
-                .error(android.R.drawable.ic_dialog_alert)
-                .into(holder.thumbnailImage);
+        // 加载缩略图，尺寸与预加载请求一致，快速滑动时直接命中内存缓存
+        thumbnailRequest(item).into(holder.thumbnailImage);
 
         // 当用户点击图片时，新增处理前后对比的逻辑
         holder.thumbnailImage.setOnClickListener(v -> {
             if (!isSelectionMode && listener != null && !holder.swipeLayout.isOpen()) {
-                // 打开对比活动，传递两个图片的路径
-                Intent intent = new Intent(v.getContext(), CompareActivity.class);
-                intent.putExtra("originalPath", item.getOriginalPath());     // 原始图片路径
-                intent.putExtra("processedPath", item.getProcessedPath());   // 处理后图片路径
-                v.getContext().startActivity(intent);
+                listener.onItemClick(item);
             }
         });
 
         // 设置时间戳
-        holder.timeText.setText(formatTime(item.getTimestamp()));
+        holder.timeText.setText(timeFormat.format(new Date(item.getTimestamp())));
 
         // 设置选择框状态
         holder.selectionCheckBox.setVisibility(isSelectionMode ? View.VISIBLE : View.GONE);
-        holder.selectionCheckBox.setChecked(selectedItems.contains(position));
+        holder.selectionCheckBox.setChecked(selectedIds.contains(item.getId()));
 
         // 重置swipe状态
         holder.swipeLayout.close();
@@ -138,100 +143,123 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryV
             if (holder.swipeLayout.isOpen()) {
                 holder.swipeLayout.close();
             } else if (isSelectionMode) {
-                toggleSelection(position);
+                toggleSelection(holder.getBindingAdapterPosition());
             } else if (listener != null) {
-                // 修改这里，点击整个内容区域也打开对比界面
-                Intent intent = new Intent(v.getContext(), CompareActivity.class);
-                intent.putExtra("originalPath", item.getOriginalPath());     // 原始图片路径
-                intent.putExtra("processedPath", item.getProcessedPath());   // 处理后图片路径
-                v.getContext().startActivity(intent);
+                // 点击整个内容区域也打开对比界面
+                listener.onItemClick(item);
             }
         });
     }
 
+    /**
+     * 列表行和预加载共用的缩略图请求。
+     * 读取处理时生成的 512px 缩略图，按控件尺寸解码；缩略图缺失时退回到原图，同样按控件尺寸降采样。
+     * 签名取记录的时间戳，同一路径的记录被重新写入后不会命中旧缓存。
+     */
+    private RequestBuilder<Drawable> thumbnailRequest(DocumentHistoryManager.HistoryItem item) {
+        ObjectKey signature = new ObjectKey(item.getTimestamp());
+        RequestBuilder<Drawable> fallback = requestManager
+                .load(new File(item.getOriginalPath()))
+                .override(thumbnailSize)
+                .centerCrop()
+                .signature(signature)
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                .error(android.R.drawable.ic_dialog_alert);
+
+        String thumbnailPath = item.getThumbnailPath();
+        if (thumbnailPath == null) {
+            return fallback;
+        }
+        return requestManager
+                .load(new File(thumbnailPath))
+                .override(thumbnailSize)
+                .centerCrop()
+                .signature(signature)
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                .error(fallback);
+    }
 
+    @NonNull
+    @Override
+    public List<DocumentHistoryManager.HistoryItem> getPreloadItems(int position) {
+        if (position < 0 || position >= getItemCount()) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(getItem(position));
+    }
 
     @Override
-    public int getItemCount() {
-        return historyItems.size();
+    public RequestBuilder<?> getPreloadRequestBuilder(@NonNull DocumentHistoryManager.HistoryItem item) {
+        return thumbnailRequest(item);
     }
 
     public void setSelectionMode(boolean selectionMode) {
         if (this.isSelectionMode != selectionMode) {
             this.isSelectionMode = selectionMode;
             if (!selectionMode) {
-                selectedItems.clear();
+                selectedIds.clear();
                 if (listener != null) {
                     listener.onSelectionChanged(0);
                 }
             }
-            notifyItemRangeChanged(0, historyItems.size());
+            notifyItemRangeChanged(0, getItemCount());
         }
     }
 
+    /**
+     * 选中当前列表中的全部记录，调用前应先加载完所有分页。
+     */
     public void selectAll() {
-        selectedItems.clear();
-        for (int i = 0; i < historyItems.size(); i++) {
-            selectedItems.add(i);
+        selectedIds.clear();
+        for (DocumentHistoryManager.HistoryItem item : getCurrentList()) {
+            selectedIds.add(item.getId());
         }
         if (listener != null) {
-            listener.onSelectionChanged(selectedItems.size());
+            listener.onSelectionChanged(selectedIds.size());
         }
-        notifyItemRangeChanged(0, historyItems.size());
+        notifyItemRangeChanged(0, getItemCount());
     }
 
     public void toggleSelection(int position) {
-        if (selectedItems.contains(position)) {
-            selectedItems.remove(position);
-        } else {
-            selectedItems.add(position);
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+        long id = getItem(position).getId();
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
         }
         if (listener != null) {
-            listener.onSelectionChanged(selectedItems.size());
+            listener.onSelectionChanged(selectedIds.size());
         }
         notifyItemChanged(position);
     }
 
-    public List<HistoryItem> getSelectedItems() {
-        List<HistoryItem> items = new ArrayList<>();
-        for (Integer position : selectedItems) {
-            items.add(historyItems.get(position));
+    public List<DocumentHistoryManager.HistoryItem> getSelectedItems() {
+        List<DocumentHistoryManager.HistoryItem> items = new ArrayList<>();
+        for (DocumentHistoryManager.HistoryItem item : getCurrentList()) {
+            if (selectedIds.contains(item.getId())) {
+                items.add(item);
+            }
         }
         return items;
     }
 
-    public void updateItems(List<HistoryItem> newItems) {
-        historyItems.clear();
-        historyItems.addAll(newItems);
-        selectedItems.clear();
-        notifyDataSetChanged();
-    }
-
-    public void removeItem(HistoryItem item) {
+    @Override
+    public void submitList(List<DocumentHistoryManager.HistoryItem> list) {
         if (lastOpenedLayout != null) {
             lastOpenedLayout.close();
             lastOpenedLayout = null;
         }
-        int position = historyItems.indexOf(item);
-        if (position != -1) {
-            historyItems.remove(position);
-            notifyItemRemoved(position);
-            notifyItemRangeChanged(position, historyItems.size() - position);
+        // 清理已不在列表中的选中项
+        HashSet<Long> ids = new HashSet<>();
+        if (list != null) {
+            for (DocumentHistoryManager.HistoryItem item : list) {
+                ids.add(item.getId());
+            }
         }
-    }
-
-    public void removeItems(List<HistoryItem> items) {
-        for (HistoryItem item : items) {
-            removeItem(item);
+        if (selectedIds.retainAll(ids) && listener != null) {
+            listener.onSelectionChanged(selectedIds.size());
         }
-        selectedItems.clear();
+        super.submitList(list);
     }
-
-
-    private String formatTime(long timestamp) {
-        Date date = new Date(timestamp);
-        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
-        return format.format(date);
-    }
-
-}
\ No newline at end of file
+}
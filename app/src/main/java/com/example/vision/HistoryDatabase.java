@@ -0,0 +1,61 @@
+package com.example.vision;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import androidx.annotation.NonNull;
+
+/**
+ * 历史记录的 SQLite 存储。
+ * 按时间戳建索引，插入是单行写入，分页读取走索引，每次修改都在事务中提交。
+ */
+class HistoryDatabase extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "document_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_HISTORY = "history";
+    static final String COLUMN_ID = "_id";
+    static final String COLUMN_ORIGINAL_PATH = "original_path";
+    static final String COLUMN_PROCESSED_PATH = "processed_path";
+    static final String COLUMN_THUMBNAIL_PATH = "thumbnail_path";
+    static final String COLUMN_TIMESTAMP = "timestamp";
+
+    private static volatile HistoryDatabase instance;
+
+    private HistoryDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // WAL 模式下读写互不阻塞，后台写入历史时列表仍可分页读取
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    static HistoryDatabase getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (HistoryDatabase.class) {
+                if (instance == null) {
+                    instance = new HistoryDatabase(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // 三个路径共同确定一条记录，与 HistoryItem.equals 一致；重复添加时只刷新时间戳
+        db.execSQL("CREATE TABLE " + TABLE_HISTORY + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_ORIGINAL_PATH + " TEXT NOT NULL, "
+                + COLUMN_PROCESSED_PATH + " TEXT NOT NULL, "
+                + COLUMN_THUMBNAIL_PATH + " TEXT NOT NULL, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + "UNIQUE (" + COLUMN_ORIGINAL_PATH + ", " + COLUMN_PROCESSED_PATH + ", "
+                + COLUMN_THUMBNAIL_PATH + "))");
+        db.execSQL("CREATE INDEX idx_history_timestamp ON " + TABLE_HISTORY
+                + " (" + COLUMN_TIMESTAMP + " DESC, " + COLUMN_ID + " DESC)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // 目前只有第一版
+    }
+}
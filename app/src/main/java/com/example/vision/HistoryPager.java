@@ -0,0 +1,189 @@
+package com.example.vision;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 历史记录的分页加载。
+ * 在后台线程上按 (时间戳, 行号) 逐页读取，每页都是索引上的有界查询，首屏耗时与历史总数无关。
+ * 已加载的列表以不可变快照的形式在主线程上回调，交给 ListAdapter 做差异更新。
+ */
+class HistoryPager {
+    private static final String TAG = "HistoryPager";
+    static final int PAGE_SIZE = 30;
+
+    interface Listener {
+        // 主线程回调
+        void onItemsChanged(@NonNull List<DocumentHistoryManager.HistoryItem> items, boolean endReached);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "history-pager");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 以下字段只在主线程上读写
+    private List<DocumentHistoryManager.HistoryItem> items = new ArrayList<>();
+    private boolean endReached = false;
+    private boolean loading = false;
+    private int generation = 0;
+
+    HistoryPager(@NonNull Context context, @NonNull Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * 丢弃已加载的数据，从第一页重新加载。
+     */
+    void refresh() {
+        generation++;
+        items = new ArrayList<>();
+        endReached = false;
+        loading = false;
+        loadNextPage();
+    }
+
+    /**
+     * 加载下一页，正在加载或已到末尾时忽略。
+     */
+    void loadNextPage() {
+        if (loading || endReached) {
+            return;
+        }
+        loading = true;
+        int requestGeneration = generation;
+        DocumentHistoryManager.HistoryItem after = items.isEmpty() ? null : items.get(items.size() - 1);
+        executor.execute(() -> {
+            long startTime = System.currentTimeMillis();
+            List<DocumentHistoryManager.HistoryItem> page =
+                    DocumentHistoryManager.getHistoryPage(context, after, PAGE_SIZE);
+            Log.d(TAG, "Loaded page of " + page.size() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) return;
+                loading = false;
+                appendPage(page);
+            });
+        });
+    }
+
+    /**
+     * 加载剩余的全部记录，例如全选之前。完成后在主线程上执行 onLoaded。
+     */
+    void loadAll(@Nullable Runnable onLoaded) {
+        if (endReached) {
+            if (onLoaded != null) onLoaded.run();
+            return;
+        }
+        generation++;
+        loading = true;
+        int requestGeneration = generation;
+        DocumentHistoryManager.HistoryItem after = items.isEmpty() ? null : items.get(items.size() - 1);
+        executor.execute(() -> {
+            List<DocumentHistoryManager.HistoryItem> rest = new ArrayList<>();
+            DocumentHistoryManager.HistoryItem cursor = after;
+            List<DocumentHistoryManager.HistoryItem> page;
+            do {
+                page = DocumentHistoryManager.getHistoryPage(context, cursor, PAGE_SIZE);
+                rest.addAll(page);
+                if (!page.isEmpty()) cursor = page.get(page.size() - 1);
+            } while (page.size() == PAGE_SIZE);
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) return;
+                loading = false;
+                List<DocumentHistoryManager.HistoryItem> updated = new ArrayList<>(items);
+                updated.addAll(rest);
+                items = updated;
+                endReached = true;
+                listener.onItemsChanged(items, true);
+                if (onLoaded != null) onLoaded.run();
+            });
+        });
+    }
+
+    /**
+     * 删除记录及其文件，完成后在主线程上回调删除成功的数量。
+     */
+    void delete(@NonNull Collection<DocumentHistoryManager.HistoryItem> toDelete, @NonNull DeleteCallback callback) {
+        List<DocumentHistoryManager.HistoryItem> targets = new ArrayList<>(toDelete);
+        executor.execute(() -> {
+            Set<Long> deletedIds = new HashSet<>();
+            for (DocumentHistoryManager.HistoryItem item : targets) {
+                if (deleteFiles(context, item)) {
+                    DocumentHistoryManager.removeHistory(context, item);
+                    deletedIds.add(item.getId());
+                }
+            }
+            mainHandler.post(() -> {
+                List<DocumentHistoryManager.HistoryItem> remaining = new ArrayList<>(items.size());
+                for (DocumentHistoryManager.HistoryItem item : items) {
+                    if (!deletedIds.contains(item.getId())) remaining.add(item);
+                }
+                items = remaining;
+                listener.onItemsChanged(items, endReached);
+                callback.onDeleted(deletedIds.size(), targets.size());
+            });
+        });
+    }
+
+    interface DeleteCallback {
+        void onDeleted(int deletedCount, int requestedCount);
+    }
+
+    void shutdown() {
+        generation++;
+        executor.shutdown();
+    }
+
+    private void appendPage(List<DocumentHistoryManager.HistoryItem> page) {
+        List<DocumentHistoryManager.HistoryItem> updated = new ArrayList<>(items.size() + page.size());
+        updated.addAll(items);
+        updated.addAll(page);
+        items = updated;
+        endReached = page.size() < PAGE_SIZE;
+        listener.onItemsChanged(items, endReached);
+    }
+
+    /**
+     * 删除记录的文件，其他历史记录仍在使用的文件保留。
+     */
+    private static boolean deleteFiles(Context context, DocumentHistoryManager.HistoryItem item) {
+        try {
+            boolean originalDeleted = deleteIfUnreferenced(context, item.getOriginalPath(), item.getId());
+            boolean processedDeleted = deleteIfUnreferenced(context, item.getProcessedPath(), item.getId());
+            boolean thumbnailDeleted = deleteIfUnreferenced(context, item.getThumbnailPath(), item.getId());
+            return originalDeleted && processedDeleted && thumbnailDeleted;
+        } catch (Exception e) {
+            Log.e(TAG, "删除文件失败", e);
+            return false;
+        }
+    }
+
+    private static boolean deleteIfUnreferenced(Context context, String path, long itemId) {
+        File file = new File(path);
+        if (!file.exists()) {
+            return true;
+        }
+        if (DocumentHistoryManager.isFileReferenced(context, path, itemId)) {
+            Log.d(TAG, "文件仍被其他记录引用，保留: " + path);
+            return true;
+        }
+        return file.delete();
+    }
+}
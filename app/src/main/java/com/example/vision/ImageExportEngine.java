@@ -0,0 +1,261 @@
+package com.example.vision;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 逐页导出图片文件。
+ * 源文件已经是目标格式时不经过解码：优先建立硬链接，跨文件系统时用 FileChannel.transferTo 由内核直接拷贝；
+ * 需要转换格式时在有限的线程池上并行解码和编码，并发数受内存限制，每个线程同时只持有一张整幅位图。
+ */
+class ImageExportEngine {
+    private static final String TAG = "ImageExportEngine";
+
+    static final String FORMAT_JPEG = "jpg";
+    static final String FORMAT_PNG = "png";
+    static final String FORMAT_WEBP = "webp";
+
+    // WebP 有损编码质量，扫描件在此质量下文字边缘无明显损失
+    private static final int WEBP_QUALITY = 90;
+    // 非 JPEG 源导出为 JPEG 时的质量，与处理结果的保存质量一致
+    private static final int JPEG_QUALITY = 95;
+    private static final int MAX_TRANSCODE_THREADS = 3;
+
+    /**
+     * 一次导出的统计，页数、写入字节数和耗时。
+     */
+    static class Result {
+        final int pageCount;
+        final long bytes;
+        final long elapsedMs;
+        final int linkedCount;
+        final int copiedCount;
+        final int transcodedCount;
+
+        Result(int pageCount, long bytes, long elapsedMs, int linkedCount, int copiedCount, int transcodedCount) {
+            this.pageCount = pageCount;
+            this.bytes = bytes;
+            this.elapsedMs = elapsedMs;
+            this.linkedCount = linkedCount;
+            this.copiedCount = copiedCount;
+            this.transcodedCount = transcodedCount;
+        }
+
+        long getBytesPerSecond() {
+            return bytes * 1000 / Math.max(1, elapsedMs);
+        }
+    }
+
+    private static final int METHOD_LINK = 0;
+    private static final int METHOD_COPY = 1;
+    private static final int METHOD_TRANSCODE = 2;
+
+    private static class PageResult {
+        final long bytes;
+        final int method;
+
+        PageResult(long bytes, int method) {
+            this.bytes = bytes;
+            this.method = method;
+        }
+    }
+
+    /**
+     * 把 sources 依次导出为 exportDir/page_NNN.<format>，无法读取的页跳过。
+     */
+    @NonNull
+    static Result export(@NonNull List<File> sources, @NonNull File exportDir,
+                         @NonNull String format) throws IOException {
+        long startTime = SystemClock.elapsedRealtime();
+        int threads = Math.max(1, Math.min(MAX_TRANSCODE_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<PageResult>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                File source = sources.get(i);
+                File target = new File(exportDir, String.format(Locale.US, "page_%03d.%s", i + 1, format));
+                int page = i + 1;
+                futures.add(executor.submit(() -> {
+                    try {
+                        return exportPage(source, target, format);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Failed to export page " + page + ": " + source.getPath(), e);
+                        return null;
+                    }
+                }));
+            }
+
+            int pageCount = 0;
+            long bytes = 0;
+            int[] methodCounts = new int[3];
+            for (Future<PageResult> future : futures) {
+                PageResult result = future.get();
+                if (result == null) continue;
+                pageCount++;
+                bytes += result.bytes;
+                methodCounts[result.method]++;
+            }
+
+            Result result = new Result(pageCount, bytes, SystemClock.elapsedRealtime() - startTime,
+                    methodCounts[METHOD_LINK], methodCounts[METHOD_COPY], methodCounts[METHOD_TRANSCODE]);
+            Log.d(TAG, String.format(Locale.US,
+                    "Exported %d pages as %s: %d KB in %d ms (%d KB/s), linked %d, copied %d, transcoded %d on %d threads",
+                    result.pageCount, format, result.bytes / 1024, result.elapsedMs,
+                    result.getBytesPerSecond() / 1024, result.linkedCount, result.copiedCount,
+                    result.transcodedCount, threads));
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException("Export interrupted").initCause(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Export failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static PageResult exportPage(File source, File target, String format) throws IOException {
+        if (!source.exists() || !source.canRead()) {
+            throw new IOException("Source file not accessible");
+        }
+
+        if (format.equals(detectFormat(source))) {
+            if (link(source, target)) {
+                return new PageResult(source.length(), METHOD_LINK);
+            }
+            return new PageResult(transfer(source, target), METHOD_COPY);
+        }
+        return new PageResult(transcode(source, target, format), METHOD_TRANSCODE);
+    }
+
+    /**
+     * 根据文件头判断实际格式，不依赖扩展名。
+     */
+    static String detectFormat(File file) throws IOException {
+        byte[] header = new byte[12];
+        int read;
+        try (InputStream in = new FileInputStream(file)) {
+            read = in.read(header);
+        }
+        if (read >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return FORMAT_JPEG;
+        }
+        if (read >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return FORMAT_PNG;
+        }
+        if (read >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return FORMAT_WEBP;
+        }
+        return null;
+    }
+
+    /**
+     * 建立硬链接，源和目标不在同一文件系统（例如内部存储到外部存储）时返回 false。
+     */
+    private static boolean link(File source, File target) {
+        try {
+            Os.link(source.getAbsolutePath(), target.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            Log.d(TAG, "Hard link unavailable (" + e.getMessage() + "), falling back to transferTo");
+            return false;
+        }
+    }
+
+    private static long transfer(File source, File target) throws IOException {
+        File temp = tempFileFor(target);
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(temp)) {
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            long size = inChannel.size();
+            long position = 0;
+            // transferTo 单次可能只传输一部分，循环直到完成
+            while (position < size) {
+                long transferred = inChannel.transferTo(position, size - position, outChannel);
+                if (transferred <= 0) {
+                    throw new IOException("transferTo made no progress at " + position);
+                }
+                position += transferred;
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        commit(temp, target);
+        return target.length();
+    }
+
+    private static long transcode(File source, File target, String format) throws IOException {
+        Bitmap bitmap = BitmapFactory.decodeFile(source.getAbsolutePath());
+        if (bitmap == null) {
+            throw new IOException("Failed to decode image");
+        }
+
+        File temp = tempFileFor(target);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            boolean written;
+            switch (format) {
+                case FORMAT_PNG:
+                    written = bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+                    break;
+                case FORMAT_WEBP:
+                    written = bitmap.compress(webpFormat(), WEBP_QUALITY, out);
+                    break;
+                default:
+                    written = bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+                    break;
+            }
+            if (!written) {
+                throw new IOException("Failed to encode " + format);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            bitmap.recycle();
+        }
+        commit(temp, target);
+        return target.length();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+
+    private static File tempFileFor(File target) {
+        return new File(target.getParentFile(), target.getName() + ".tmp");
+    }
+
+    private static void commit(File temp, File target) throws IOException {
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot move " + temp.getName() + " to " + target.getName());
+        }
+    }
+}
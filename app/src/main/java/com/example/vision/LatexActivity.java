@@ -21,11 +21,13 @@ import android.widget.FrameLayout;
 import android.widget.ImageView;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.FileProvider;
 import com.bumptech.glide.Glide;
 import com.example.vision.base.BaseActivity;
-import com.example.vision.network.SimpletexApiManager;
+import com.example.vision.work.JobQueue;
+import com.example.vision.work.JobStore;
 import com.google.android.material.textfield.TextInputEditText;
 import com.yalantis.ucrop.UCrop;
 import java.io.File;
@@ -34,7 +36,6 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import id.zelory.compressor.Compressor;
 
 public class LatexActivity extends BaseActivity {
     private static final String TAG = "LatexActivity";
@@ -50,6 +51,7 @@ public class LatexActivity extends BaseActivity {
     private ActivityResultLauncher<Intent> galleryLauncher;
     private Uri currentPhotoUri;
     private File currentPhotoFile;
+    private String activeJobId;
 
     // ClipboardManager
     private ClipboardManager clipboardManager;
@@ -64,7 +66,14 @@ public class LatexActivity extends BaseActivity {
         initViews();
         initActivityLaunchers();
         setupClickListeners();
-        handleIncomingImage();
+        // 重建时重新观察未完成的识别任务，不重复提交
+        String activeJob = savedInstanceState != null ? savedInstanceState.getString("activeJobId") : null;
+        if (activeJob != null) {
+            showLoading("正在识别公式...");
+            observeOcrJob(activeJob);
+        } else if (savedInstanceState == null) {
+            handleIncomingImage();
+        }
     }
 
     private void initViews() {
@@ -227,40 +236,33 @@ public class LatexActivity extends BaseActivity {
     private void recognizeLatex(File imageFile) {
         showLoading("正在识别公式...");
 
-        new Thread(() -> {
-            try {
-                File compressedImageFile = new Compressor(this)
-                        .setQuality(75)
-                        .setMaxWidth(1280)
-                        .setMaxHeight(720)
-                        .compressToFile(imageFile);
-
-                runOnUiThread(() -> {
-                    SimpletexApiManager.getInstance().recognizeLatex(
-                            compressedImageFile,
-                            new SimpletexApiManager.ApiCallback() {
-                                @Override
-                                public void onSuccess(String latex) {
-                                    hideLoading();
-                                    latexInput.setText(latex);
-                                    renderLatexToWebView(latex);
-                                }
-
-                                @Override
-                                public void onFailure(String error) {
-                                    hideLoading();
-                                    showToast("识别失败: " + error);
-                                    latexInput.setText("");
-                                }
-                            }
-                    );
-                });
-            } catch (IOException e) {
-                hideLoading();
-                e.printStackTrace();
-                runOnUiThread(() -> showToast("图片压缩失败: " + e.getMessage()));
+        try {
+            observeOcrJob(JobQueue.enqueueOcr(this, JobStore.TYPE_OCR_LATEX, imageFile));
+        } catch (IOException e) {
+            hideLoading();
+            Log.e(TAG, "Failed to enqueue recognition", e);
+            showToast("识别失败: " + e.getMessage());
+        }
+    }
+
+    // 识别在后台任务中执行，界面只观察结果，旋转或重建后会重新挂上同一个任务
+    private void observeOcrJob(String jobId) {
+        activeJobId = jobId;
+        JobStore store = JobStore.getInstance(this);
+        store.observe(jobId).observe(this, record -> {
+            if (record == null || !record.isFinished() || !jobId.equals(activeJobId)) return;
+            activeJobId = null;
+            store.remove(jobId);
+            hideLoading();
+
+            if (JobStore.STATE_SUCCEEDED.equals(record.state) && record.output != null) {
+                latexInput.setText(record.output);
+                renderLatexToWebView(record.output);
+            } else {
+                showToast("识别失败: " + record.error);
+                latexInput.setText("");
             }
-        }).start();
+        });
     }
     private void renderLatexToWebView(String latex) {
         if (latex == null || latex.trim().isEmpty()) {
@@ -474,6 +476,12 @@ public class LatexActivity extends BaseActivity {
         }
     }
 
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString("activeJobId", activeJobId);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -0,0 +1,189 @@
+package com.example.vision;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按容量复用的 Mat 工作区。
+ * 文档处理的各个阶段从这里借用缓冲区，用完后归还，批量处理时原生内存占用保持稳定。
+ * 每页透视变换后的尺寸都不同，因此缓冲区按字节容量而不是精确尺寸匹配：底层是一行连续的 8 位缓冲区，
+ * 借出时按请求的行列数和通道数重新解释为连续的视图，容量足够且浪费不多的缓冲区都可以复用。
+ * 批次结束或系统内存紧张时调用 clear() 释放全部空闲缓冲区。
+ */
+public class MatWorkspace {
+    private static final String TAG = "MatWorkspace";
+    private static final int MAX_MATS_PER_SIZE = 4;
+    private static final long MAX_POOLED_BYTES = 160L * 1024 * 1024;
+    // 复用时容量最多为请求大小的这一倍数，避免小图长期占用大缓冲区
+    private static final double MAX_SLACK = 1.5;
+    // 新缓冲区的容量向上取整到二次幂的 1/8 档，尺寸相近的页面落在同一档
+    private static final int BUCKET_STEPS = 8;
+
+    private static volatile MatWorkspace instance;
+
+    // 容量 -> 空闲缓冲区。LinkedHashMap 按访问顺序排列，超出预算时优先淘汰最久未用的容量档
+    private final Map<Long, ArrayDeque<Mat>> pool = new LinkedHashMap<>(16, 0.75f, true);
+    // 借出的视图 -> 底层缓冲区
+    private final Map<Mat, Mat> borrowed = new IdentityHashMap<>();
+    private long pooledBytes = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    public static MatWorkspace getInstance() {
+        if (instance == null) {
+            synchronized (MatWorkspace.class) {
+                if (instance == null) {
+                    instance = new MatWorkspace();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 借用一个指定尺寸和类型的连续 Mat，内容未初始化。
+     */
+    @NonNull
+    public Mat acquire(int rows, int cols, int type) {
+        long bytes = (long) rows * cols * CvType.channels(type);
+        if (CvType.depth(type) != CvType.CV_8U || bytes <= 0 || bytes > Integer.MAX_VALUE) {
+            return new Mat(rows, cols, type);
+        }
+
+        Mat buffer;
+        synchronized (this) {
+            buffer = takeBuffer(bytes);
+            if (buffer != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (buffer == null) {
+            buffer = new Mat(1, bucketCapacity(bytes), CvType.CV_8UC1);
+        }
+
+        // 单行 Mat 的列区间仍是连续的，可以直接按目标行数和通道数重新解释
+        Mat range = buffer.colRange(0, (int) bytes);
+        Mat view = range.reshape(CvType.channels(type), rows);
+        range.release();
+        synchronized (this) {
+            borrowed.put(view, buffer);
+        }
+        return view;
+    }
+
+    /**
+     * 归还借用的 Mat。不是从工作区借出的 Mat 直接释放；超出单档上限或总预算时释放底层缓冲区。
+     */
+    public void recycle(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        Mat buffer;
+        synchronized (this) {
+            buffer = borrowed.remove(mat);
+        }
+        // 视图被 OpenCV 重新分配过时不再指向底层缓冲区，底层缓冲区仍可复用
+        mat.release();
+        if (buffer == null) {
+            return;
+        }
+
+        long capacity = buffer.total();
+        synchronized (this) {
+            ArrayDeque<Mat> buffers = pool.get(capacity);
+            if ((buffers != null && buffers.size() >= MAX_MATS_PER_SIZE) || capacity > MAX_POOLED_BYTES) {
+                buffer.release();
+                return;
+            }
+            if (buffers == null) {
+                buffers = new ArrayDeque<>();
+                pool.put(capacity, buffers);
+            }
+            buffers.push(buffer);
+            pooledBytes += capacity;
+            trimToBudget();
+        }
+    }
+
+    /**
+     * 释放工作区持有的全部空闲缓冲区，在批次结束和系统内存紧张时调用。借出中的缓冲区不受影响。
+     */
+    public synchronized void clear() {
+        if (pool.isEmpty()) {
+            return;
+        }
+        logStats();
+        for (ArrayDeque<Mat> buffers : pool.values()) {
+            for (Mat buffer : buffers) {
+                buffer.release();
+            }
+        }
+        pool.clear();
+        pooledBytes = 0;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public synchronized void logStats() {
+        Log.d(TAG, "Workspace stats - pooled: " + (pooledBytes / 1024) + " KB, hits: " + hits
+                + ", misses: " + misses + ", sizes: " + pool.size() + ", borrowed: " + borrowed.size());
+    }
+
+    /**
+     * 取出容量在 [bytes, bytes * MAX_SLACK] 内最小的空闲缓冲区，没有时返回 null。
+     */
+    private Mat takeBuffer(long bytes) {
+        long maxCapacity = (long) (bytes * MAX_SLACK);
+        Long best = null;
+        for (Map.Entry<Long, ArrayDeque<Mat>> entry : pool.entrySet()) {
+            long capacity = entry.getKey();
+            if (capacity >= bytes && capacity <= maxCapacity && !entry.getValue().isEmpty()
+                    && (best == null || capacity < best)) {
+                best = capacity;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        // 通过 get 访问，更新该容量档的使用顺序
+        ArrayDeque<Mat> buffers = pool.get(best);
+        Mat buffer = buffers.pop();
+        pooledBytes -= best;
+        if (buffers.isEmpty()) {
+            pool.remove(best);
+        }
+        return buffer;
+    }
+
+    private void trimToBudget() {
+        Iterator<Map.Entry<Long, ArrayDeque<Mat>>> iterator = pool.entrySet().iterator();
+        while (pooledBytes > MAX_POOLED_BYTES && iterator.hasNext()) {
+            Map.Entry<Long, ArrayDeque<Mat>> entry = iterator.next();
+            ArrayDeque<Mat> buffers = entry.getValue();
+            while (!buffers.isEmpty() && pooledBytes > MAX_POOLED_BYTES) {
+                buffers.removeLast().release();
+                pooledBytes -= entry.getKey();
+            }
+            if (buffers.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int bucketCapacity(long bytes) {
+        long step = Math.max(1, Long.highestOneBit(bytes) / BUCKET_STEPS);
+        long capacity = (bytes + step - 1) / step * step;
+        return (int) Math.min(capacity, Integer.MAX_VALUE);
+    }
+}
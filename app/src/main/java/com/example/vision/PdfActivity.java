@@ -13,11 +13,13 @@ import android.widget.FrameLayout;
 import android.widget.ImageView;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.FileProvider;
 import com.bumptech.glide.Glide;
 import com.example.vision.base.BaseActivity;
-import com.example.vision.network.SimpletexApiManager;
+import com.example.vision.work.JobQueue;
+import com.example.vision.work.JobStore;
 import com.google.android.material.textfield.TextInputEditText;
 import com.yalantis.ucrop.UCrop;
 import java.io.File;
@@ -26,7 +28,6 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.regex.Pattern;
-import id.zelory.compressor.Compressor;
 
 public class PdfActivity extends BaseActivity {
     private static final String TAG = "PdfActivity";
@@ -41,6 +42,7 @@ public class PdfActivity extends BaseActivity {
     private ActivityResultLauncher<Intent> galleryLauncher;
     private Uri currentPhotoUri;
     private File currentPhotoFile;
+    private String activeJobId;
 
     // 剪贴板管理器
     private ClipboardManager clipboardManager;
@@ -56,7 +58,14 @@ public class PdfActivity extends BaseActivity {
             initViews();
             initActivityLaunchers();
             setupClickListeners();
-            handleIncomingImage();
+            // 重建时重新观察未完成的识别任务，不重复提交
+            String activeJob = savedInstanceState != null ? savedInstanceState.getString("activeJobId") : null;
+            if (activeJob != null) {
+                showLoading("正在识别文档...");
+                observeOcrJob(activeJob);
+            } else if (savedInstanceState == null) {
+                handleIncomingImage();
+            }
         } catch (Exception e) {
             Log.e(TAG, "onCreate error: ", e);
             showToast("初始化失败: " + e.getMessage());
@@ -205,39 +214,32 @@ public class PdfActivity extends BaseActivity {
     private void recognizePdf(File imageFile) {
         showLoading("正在识别文档...");
 
-        new Thread(() -> {
-            try {
-                File compressedImageFile = new Compressor(this)
-                        .setQuality(75)
-                        .setMaxWidth(1280)
-                        .setMaxHeight(720)
-                        .compressToFile(imageFile);
-
-                runOnUiThread(() -> {
-                    SimpletexApiManager.getInstance().recognizePdf(
-                            compressedImageFile,
-                            new SimpletexApiManager.ApiCallback() {
-                                @Override
-                                public void onSuccess(String text) {
-                                    hideLoading();
-                                    pdfInput.setText(text);
-                                }
-
-                                @Override
-                                public void onFailure(String error) {
-                                    hideLoading();
-                                    showToast("识别失败: " + error);
-                                    pdfInput.setText("");
-                                }
-                            }
-                    );
-                });
-            } catch (IOException e) {
-                hideLoading();
-                e.printStackTrace();
-                runOnUiThread(() -> showToast("图片压缩失败: " + e.getMessage()));
+        try {
+            observeOcrJob(JobQueue.enqueueOcr(this, JobStore.TYPE_OCR_DOC, imageFile));
+        } catch (IOException e) {
+            hideLoading();
+            Log.e(TAG, "Failed to enqueue recognition", e);
+            showToast("识别失败: " + e.getMessage());
+        }
+    }
+
+    // 识别在后台任务中执行，界面只观察结果，旋转或重建后会重新挂上同一个任务
+    private void observeOcrJob(String jobId) {
+        activeJobId = jobId;
+        JobStore store = JobStore.getInstance(this);
+        store.observe(jobId).observe(this, record -> {
+            if (record == null || !record.isFinished() || !jobId.equals(activeJobId)) return;
+            activeJobId = null;
+            store.remove(jobId);
+            hideLoading();
+
+            if (JobStore.STATE_SUCCEEDED.equals(record.state) && record.output != null) {
+                pdfInput.setText(record.output);
+            } else {
+                showToast("识别失败: " + record.error);
+                pdfInput.setText("");
             }
-        }).start();
+        });
     }
 
     private void copyText(boolean asMarkdown) {
@@ -339,6 +341,12 @@ public class PdfActivity extends BaseActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString("activeJobId", activeJobId);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
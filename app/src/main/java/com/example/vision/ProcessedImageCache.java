@@ -0,0 +1,297 @@
+package com.example.vision;
+
+import android.content.Context;
+import android.graphics.PointF;
+import android.net.Uri;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按内容寻址的校正结果缓存。
+ * 键由源图字节、角点坐标和处理参数签名的 SHA-256 组成，同一裁剪再次处理时直接返回已有的结果。
+ * 缓存文件只属于缓存自己，保存在 files/processed_cache/ 下；命中时为调用方新建硬链接（不支持时退回复制），
+ * 照片列表和历史记录里的每个条目都独占自己的路径，删除条目不会影响其他条目，淘汰缓存也不会删掉正在使用的页面。
+ * 索引按访问顺序保存在 files/processed_cache.json，缓存目录超出预算时淘汰最久未用的条目。
+ * 命中只更新内存中的访问顺序，索引在写入或删除条目时才落盘。
+ * 与调用方共享数据块的文件要等所有链接都删除后才真正释放空间。
+ */
+public class ProcessedImageCache {
+    private static final String TAG = "ProcessedImageCache";
+    private static final String CACHE_DIR = "processed_cache";
+    private static final String INDEX_FILE = "processed_cache.json";
+    private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static volatile ProcessedImageCache instance;
+
+    private final Context context;
+    private final File cacheDir;
+    // LinkedHashMap 按访问顺序排列，迭代顺序即淘汰顺序
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0;
+
+    private static class Entry {
+        final long bytes;
+
+        Entry(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private ProcessedImageCache(Context context) {
+        this.context = context;
+        cacheDir = new File(context.getFilesDir(), CACHE_DIR);
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Cannot create processed cache directory");
+        }
+        loadIndex();
+    }
+
+    public static ProcessedImageCache getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (ProcessedImageCache.class) {
+                if (instance == null) {
+                    instance = new ProcessedImageCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 计算缓存键。paramsSignature 应包含所有影响输出像素和编码的参数。
+     */
+    @NonNull
+    public String computeKey(@NonNull Uri sourceUri, @NonNull PointF[] corners,
+                             @NonNull String paramsSignature) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+
+        try (InputStream inputStream = context.getContentResolver().openInputStream(sourceUri)) {
+            if (inputStream == null) {
+                throw new IOException("Failed to open input stream");
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        // 角点按原始位模式参与计算，坐标有任何变化都会得到不同的键
+        StringBuilder extra = new StringBuilder(paramsSignature);
+        for (PointF corner : corners) {
+            extra.append('|').append(Float.floatToIntBits(corner.x))
+                    .append(',').append(Float.floatToIntBits(corner.y));
+        }
+        digest.update(extra.toString().getBytes(StandardCharsets.UTF_8));
+
+        byte[] hash = digest.digest();
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 查找缓存的结果，命中时把缓存文件链接到调用方给出的两个目标路径并返回它们。
+     * 目标路径必须是新的、唯一的文件名；缓存文件丢失或链接失败时移除条目并返回 null。
+     */
+    @Nullable
+    public synchronized DocumentProcessor.DocumentResult get(@NonNull String key, @NonNull File processedTarget,
+                                                             @NonNull File thumbnailTarget) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        File processed = processedFile(key);
+        File thumbnail = thumbnailFile(key);
+        if (!processed.exists() || !thumbnail.exists()) {
+            Log.d(TAG, "Cached files missing, dropping entry " + key);
+            remove(key, entry);
+            saveIndex();
+            return null;
+        }
+        try {
+            linkOrCopy(processed, processedTarget);
+            linkOrCopy(thumbnail, thumbnailTarget);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to publish cached result " + key, e);
+            processedTarget.delete();
+            thumbnailTarget.delete();
+            return null;
+        }
+        return new DocumentProcessor.DocumentResult(processedTarget.getAbsolutePath(),
+                thumbnailTarget.getAbsolutePath());
+    }
+
+    /**
+     * 保存结果。缓存为结果文件建立自己的链接，调用方之后删除或保留原文件都不影响缓存。
+     */
+    public synchronized void put(@NonNull String key, @NonNull DocumentProcessor.DocumentResult result) {
+        File processed = processedFile(key);
+        File thumbnail = thumbnailFile(key);
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        try {
+            // 先删掉旧链接，link 不会覆盖已有文件
+            processed.delete();
+            thumbnail.delete();
+            linkOrCopy(new File(result.processedPath), processed);
+            linkOrCopy(new File(result.thumbnailPath), thumbnail);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to cache result " + key, e);
+            processed.delete();
+            thumbnail.delete();
+            saveIndex();
+            return;
+        }
+
+        long bytes = processed.length() + thumbnail.length();
+        entries.put(key, new Entry(bytes));
+        totalBytes += bytes;
+        trimToSize();
+        saveIndex();
+    }
+
+    private void trimToSize() {
+        if (totalBytes <= MAX_CACHE_BYTES) {
+            return;
+        }
+        // 缓存目录里的文件只被缓存使用，可以直接删除
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > MAX_CACHE_BYTES && iterator.hasNext()) {
+            Map.Entry<String, Entry> item = iterator.next();
+            iterator.remove();
+            totalBytes -= item.getValue().bytes;
+            deleteFiles(item.getKey());
+        }
+        Log.d(TAG, "Trimmed cache to " + entries.size() + " entries, " + totalBytes / 1024 + " KB");
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        totalBytes -= entry.bytes;
+        deleteFiles(key);
+    }
+
+    private void deleteFiles(String key) {
+        for (File file : new File[]{processedFile(key), thumbnailFile(key)}) {
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Failed to delete evicted file: " + file.getPath());
+            }
+        }
+    }
+
+    private File processedFile(String key) {
+        return new File(cacheDir, key + ".jpg");
+    }
+
+    private File thumbnailFile(String key) {
+        return new File(cacheDir, key + "_thumb.jpg");
+    }
+
+    /**
+     * 在 target 建立 source 的硬链接，两者都在应用私有目录，通常在同一文件系统上；不支持时复制。
+     */
+    private static void linkOrCopy(File source, File target) throws IOException {
+        try {
+            Os.link(source.getAbsolutePath(), target.getAbsolutePath());
+            return;
+        } catch (ErrnoException e) {
+            Log.d(TAG, "Hard link failed, copying " + source.getName() + ": " + e.getMessage());
+        }
+        File tempFile = new File(target.getPath() + ".tmp");
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(tempFile);
+             FileChannel inChannel = in.getChannel();
+             FileChannel outChannel = out.getChannel()) {
+            long size = inChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += inChannel.transferTo(position, size - position, outChannel);
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        if (!tempFile.renameTo(target)) {
+            tempFile.delete();
+            throw new IOException("Failed to move " + tempFile.getName() + " to " + target.getName());
+        }
+    }
+
+    private void loadIndex() {
+        File file = new File(context.getFilesDir(), INDEX_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            // 索引按从旧到新保存，依次插入即可恢复访问顺序
+            JSONArray array = new JSONArray(new String(data, 0, offset, StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject json = array.getJSONObject(i);
+                Entry entry = new Entry(json.getLong("bytes"));
+                entries.put(json.getString("key"), entry);
+                totalBytes += entry.bytes;
+            }
+            Log.d(TAG, "Loaded " + entries.size() + " cache entries, " + totalBytes / 1024 + " KB");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load cache index, starting empty", e);
+            entries.clear();
+            totalBytes = 0;
+        }
+    }
+
+    private void saveIndex() {
+        File file = new File(context.getFilesDir(), INDEX_FILE);
+        File tempFile = new File(context.getFilesDir(), INDEX_FILE + ".tmp");
+        try {
+            JSONArray array = new JSONArray();
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                JSONObject json = new JSONObject();
+                json.put("key", item.getKey());
+                json.put("bytes", item.getValue().bytes);
+                array.put(json);
+            }
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tempFile.renameTo(file)) {
+                Log.w(TAG, "Failed to commit cache index");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to save cache index", e);
+        }
+    }
+}
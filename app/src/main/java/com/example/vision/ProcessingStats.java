@@ -0,0 +1,51 @@
+package com.example.vision;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 单页处理的耗时与原生内存统计，用于对比优化前后的效果。
+ */
+class ProcessingStats {
+    private final String label;
+    private final long startTime;
+    private final long nativeBefore;
+    private long nativePeak;
+    private int frameCopies;
+    private final StringBuilder copyStages = new StringBuilder();
+
+    private ProcessingStats(String label) {
+        this.label = label;
+        this.startTime = SystemClock.elapsedRealtime();
+        this.nativeBefore = Debug.getNativeHeapAllocatedSize();
+        this.nativePeak = nativeBefore;
+    }
+
+    static ProcessingStats start(String label) {
+        return new ProcessingStats(label);
+    }
+
+    // 在各阶段结束时采样，记录原生堆峰值
+    void sample() {
+        nativePeak = Math.max(nativePeak, Debug.getNativeHeapAllocatedSize());
+    }
+
+    // 记录一次整幅图像的拷贝或转换，同时采样内存
+    void frameCopy(String stage) {
+        frameCopies++;
+        if (copyStages.length() > 0) copyStages.append(" > ");
+        copyStages.append(stage);
+        sample();
+    }
+
+    void finish(String tag) {
+        sample();
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        long nativeAfter = Debug.getNativeHeapAllocatedSize();
+        Log.d(tag, String.format("%s finished in %d ms - native heap before: %d KB, peak: %d KB, after: %d KB",
+                label, elapsed, nativeBefore / 1024, nativePeak / 1024, nativeAfter / 1024));
+        Log.d(tag, label + " full-frame copies: " + frameCopies + " (" + copyStages + ")");
+        MatWorkspace.getInstance().logStats();
+    }
+}
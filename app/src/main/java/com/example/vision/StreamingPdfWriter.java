@@ -0,0 +1,496 @@
+package com.example.vision;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 逐页写出的 PDF 生成器。
+ * 每页的 JPEG 数据以 DCTDecode 图像流原样写入输出文件，不解码也不重新编码；
+ * 写完一页即可释放该页的全部资源，内存占用与页数无关。
+ * 页面数据的读取（prepare）与写入分开，调用方可以在工作线程上提前准备后续页面。
+ * 对象编号固定：1 为 Catalog，2 为 Pages，之后每页依次占用图像、内容流和页面三个对象。
+ */
+class StreamingPdfWriter implements Closeable {
+    private static final String TAG = "StreamingPdfWriter";
+    private static final int CATALOG_ID = 1;
+    private static final int PAGES_ID = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 无法直接嵌入的图片解码后重新编码的质量
+    private static final int FALLBACK_JPEG_QUALITY = 90;
+    // 文字层的页边距占页面短边的比例
+    private static final float TEXT_MARGIN_RATIO = 0.05f;
+    // 行数很少时按此行数计算行高，避免字号过大
+    private static final int MIN_TEXT_LINES = 40;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final CountingOutputStream out;
+    private final float maxPageSize;
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<Integer> pageIds = new ArrayList<>();
+    // 文字层字体的对象编号，第一次写入文字时才写出，0 表示尚未写出
+    private int fontId = 0;
+    private boolean finished = false;
+
+    /**
+     * @param maxPageSize 页面长边的上限（pt），图片按 1px = 1pt 排版，超出时整体缩小
+     */
+    StreamingPdfWriter(@NonNull File outputFile, float maxPageSize) throws IOException {
+        this.out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), BUFFER_SIZE));
+        this.maxPageSize = maxPageSize;
+        // Catalog 和 Pages 最后写出，先占住编号
+        offsets.add(0L);
+        offsets.add(0L);
+        // 第二行的高位字节告诉传输工具这是二进制文件
+        write("%PDF-1.4\n%âãÏÓ\n");
+    }
+
+    int getPageCount() {
+        return pageIds.size();
+    }
+
+    /**
+     * 追加一页，等价于 prepare() 后立即写入。
+     *
+     * @return 图片无法解码时返回 false，此时没有写入任何内容
+     * @throws IOException 写入输出文件失败，文件已不完整
+     */
+    boolean addPage(@NonNull File imageFile) throws IOException {
+        PreparedPage page = prepare(imageFile, maxPageSize);
+        if (page == null) {
+            return false;
+        }
+        addPage(page);
+        return true;
+    }
+
+    /**
+     * 写入一张已准备好的页面。页面按调用顺序排列。
+     */
+    void addPage(@NonNull PreparedPage page) throws IOException {
+        addPage(page, null);
+    }
+
+    /**
+     * 写入一张页面，text 不为空时在图像上叠加一层不可见文字，供阅读器搜索和选择。
+     * 识别结果不含坐标，文字按行从上到下排布，过长的行横向压缩到页面宽度以内。
+     */
+    void addPage(@NonNull PreparedPage page, @Nullable String text) throws IOException {
+        List<String> lines = text != null ? splitTextLines(text) : null;
+        if (lines != null && !lines.isEmpty() && fontId == 0) {
+            writeTextFont();
+        }
+        writePage(page.width, page.height, page.components, page.jpeg,
+                lines != null && !lines.isEmpty() ? lines : null);
+    }
+
+    /**
+     * 待写入的一页：尺寸、通道数和完整的 JPEG 数据。
+     */
+    static class PreparedPage {
+        final int width;
+        final int height;
+        final int components;
+        final byte[] jpeg;
+
+        PreparedPage(int width, int height, int components, byte[] jpeg) {
+            this.width = width;
+            this.height = height;
+            this.components = components;
+            this.jpeg = jpeg;
+        }
+    }
+
+    /**
+     * 读取一页的数据，不依赖写入器状态，可以在工作线程上并行执行。
+     * JPEG 文件原样读入；其他格式按页面尺寸降采样解码后按 FALLBACK_JPEG_QUALITY 编码。
+     *
+     * @return 图片无法读取或解码时返回 null
+     */
+    @Nullable
+    static PreparedPage prepare(@NonNull File imageFile, float maxPageSize) {
+        JpegInfo info = JpegInfo.read(imageFile);
+        if (info != null) {
+            try {
+                return new PreparedPage(info.width, info.height, info.components, readFully(imageFile));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read " + imageFile.getName(), e);
+                return null;
+            }
+        }
+        Log.d(TAG, "Not an embeddable JPEG, re-encoding: " + imageFile.getName());
+        return encodeFallback(imageFile, maxPageSize);
+    }
+
+    private void writePage(int width, int height, int components, byte[] jpeg,
+                           @Nullable List<String> textLines) throws IOException {
+        int imageId = offsets.size() + 1;
+        int contentId = imageId + 1;
+        int pageId = imageId + 2;
+
+        float scale = Math.min(1f, maxPageSize / Math.max(width, height));
+        float pageWidth = width * scale;
+        float pageHeight = height * scale;
+
+        beginObject(imageId);
+        write(String.format(Locale.US,
+                "<< /Type /XObject /Subtype /Image /Width %d /Height %d /ColorSpace %s "
+                        + "/BitsPerComponent 8 /Filter /DCTDecode%s /Length %d >>\nstream\n",
+                width, height, colorSpace(components),
+                components == 4 ? " /Decode [1 0 1 0 1 0 1 0]" : "", jpeg.length));
+        out.write(jpeg);
+        write("\nendstream\nendobj\n");
+
+        StringBuilder contentText = new StringBuilder(
+                String.format(Locale.US, "q %.2f 0 0 %.2f 0 0 cm /Im0 Do Q\n", pageWidth, pageHeight));
+        if (textLines != null) {
+            appendTextLayer(contentText, textLines, pageWidth, pageHeight);
+        }
+        byte[] content = contentText.toString().getBytes(StandardCharsets.US_ASCII);
+        beginObject(contentId);
+        write("<< /Length " + content.length + " >>\nstream\n");
+        out.write(content);
+        write("endstream\nendobj\n");
+
+        beginObject(pageId);
+        write(String.format(Locale.US,
+                "<< /Type /Page /Parent %d 0 R /MediaBox [0 0 %.2f %.2f] "
+                        + "/Resources << /XObject << /Im0 %d 0 R >>%s >> /Contents %d 0 R >>\nendobj\n",
+                PAGES_ID, pageWidth, pageHeight, imageId,
+                textLines != null ? " /Font << /F1 " + fontId + " 0 R >>" : "", contentId));
+        pageIds.add(pageId);
+    }
+
+    /**
+     * 不可见文字层：渲染模式 3 不绘制字形，只保留可搜索的文本。
+     * 字号由行高决定，Tz 把过长的行压缩到页面内容宽度以内。
+     */
+    private static void appendTextLayer(StringBuilder content, List<String> lines,
+                                        float pageWidth, float pageHeight) {
+        float margin = Math.min(pageWidth, pageHeight) * TEXT_MARGIN_RATIO;
+        float lineHeight = (pageHeight - margin * 2) / Math.max(lines.size(), MIN_TEXT_LINES);
+        float fontSize = lineHeight * 0.8f;
+        float textWidth = pageWidth - margin * 2;
+
+        content.append("BT\n3 Tr\n");
+        content.append(String.format(Locale.US, "/F1 %.2f Tf\n", fontSize));
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int glyphs = countEncodable(line);
+            if (glyphs == 0) continue;
+            // 字体的默认字宽为 1000，即每个字符宽度等于字号；超出内容宽度的行横向压缩，短行保持原宽
+            float scale = Math.min(1f, textWidth / (glyphs * fontSize)) * 100f;
+            float y = pageHeight - margin - (i + 1) * lineHeight + (lineHeight - fontSize) / 2;
+            content.append(String.format(Locale.US, "%.2f Tz 1 0 0 1 %.2f %.2f Tm <", scale, margin, y));
+            appendUtf16Hex(content, line);
+            content.append("> Tj\n");
+        }
+        content.append("ET\n");
+    }
+
+    /**
+     * 按行拆分识别文本，去掉空行和 Markdown 标题标记。
+     */
+    private static List<String> splitTextLines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String raw : text.split("\\r?\\n")) {
+            String line = raw.replaceFirst("^#+\\s*", "").trim();
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // 只写入基本多文种平面的字符，代理对和控制字符跳过
+    private static boolean isEncodable(char c) {
+        return !Character.isSurrogate(c) && !Character.isISOControl(c);
+    }
+
+    private static int countEncodable(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (isEncodable(line.charAt(i))) count++;
+        }
+        return count;
+    }
+
+    private static void appendUtf16Hex(StringBuilder out, String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (!isEncodable(c)) continue;
+            out.append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+                    .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+        }
+    }
+
+    /**
+     * 写出文字层使用的字体，整个文件只写一次。
+     * Type0 字体采用 Identity-H 编码，字符编码即 UTF-16 码元，ToUnicode 映射为恒等映射；
+     * 文字不可见，所以不嵌入字形数据，阅读器只依赖 ToUnicode 提取和搜索文本。
+     */
+    private void writeTextFont() throws IOException {
+        fontId = offsets.size() + 1;
+        int descendantId = fontId + 1;
+        int descriptorId = fontId + 2;
+        int toUnicodeId = fontId + 3;
+
+        beginObject(fontId);
+        write("<< /Type /Font /Subtype /Type0 /BaseFont /GlyphLessFont /Encoding /Identity-H "
+                + "/DescendantFonts [" + descendantId + " 0 R] /ToUnicode " + toUnicodeId + " 0 R >>\nendobj\n");
+
+        beginObject(descendantId);
+        write("<< /Type /Font /Subtype /CIDFontType2 /BaseFont /GlyphLessFont "
+                + "/CIDSystemInfo << /Registry (Adobe) /Ordering (Identity) /Supplement 0 >> "
+                + "/FontDescriptor " + descriptorId + " 0 R /DW 1000 /CIDToGIDMap /Identity >>\nendobj\n");
+
+        // FontDescriptor 必须是间接对象，内联字典会被严格的阅读器忽略
+        beginObject(descriptorId);
+        write("<< /Type /FontDescriptor /FontName /GlyphLessFont /Flags 5 "
+                + "/FontBBox [0 0 1000 1000] /ItalicAngle 0 /Ascent 1000 /Descent 0 /CapHeight 1000 /StemV 80 >>"
+                + "\nendobj\n");
+
+        StringBuilder cmap = new StringBuilder();
+        cmap.append("/CIDInit /ProcSet findresource begin\n12 dict begin\nbegincmap\n")
+                .append("/CIDSystemInfo << /Registry (Adobe) /Ordering (UCS) /Supplement 0 >> def\n")
+                .append("/CMapName /Adobe-Identity-UCS def\n/CMapType 2 def\n")
+                .append("1 begincodespacerange\n<0000> <FFFF>\nendcodespacerange\n");
+        // bfrange 的起止编码只能在最低字节上不同，按高字节分成 256 段，每段最多 100 条
+        List<Integer> highBytes = new ArrayList<>();
+        for (int high = 0; high < 256; high++) {
+            if (high < 0xD8 || high > 0xDF) highBytes.add(high);
+        }
+        for (int start = 0; start < highBytes.size(); start += 100) {
+            int end = Math.min(start + 100, highBytes.size());
+            cmap.append(end - start).append(" beginbfrange\n");
+            for (int k = start; k < end; k++) {
+                String high = String.format(Locale.US, "%02X", highBytes.get(k));
+                cmap.append('<').append(high).append("00> <").append(high).append("FF> <")
+                        .append(high).append("00>\n");
+            }
+            cmap.append("endbfrange\n");
+        }
+        cmap.append("endcmap\nCMapName currentdict /CMap defineresource pop\nend\nend\n");
+        byte[] cmapBytes = cmap.toString().getBytes(StandardCharsets.US_ASCII);
+
+        beginObject(toUnicodeId);
+        write("<< /Length " + cmapBytes.length + " >>\nstream\n");
+        out.write(cmapBytes);
+        write("endstream\nendobj\n");
+    }
+
+    /**
+     * 写出页面树、交叉引用表和文件尾。至少需要一页。
+     */
+    void finish() throws IOException {
+        if (finished) return;
+        if (pageIds.isEmpty()) {
+            throw new IOException("PDF has no pages");
+        }
+
+        StringBuilder kids = new StringBuilder();
+        for (int id : pageIds) {
+            kids.append(id).append(" 0 R ");
+        }
+        beginObject(PAGES_ID);
+        write("<< /Type /Pages /Kids [ " + kids + "] /Count " + pageIds.size() + " >>\nendobj\n");
+        beginObject(CATALOG_ID);
+        write("<< /Type /Catalog /Pages " + PAGES_ID + " 0 R >>\nendobj\n");
+
+        long xrefOffset = out.getCount();
+        StringBuilder xref = new StringBuilder();
+        xref.append("xref\n0 ").append(offsets.size() + 1).append('\n');
+        xref.append("0000000000 65535 f \n");
+        for (long offset : offsets) {
+            xref.append(String.format(Locale.US, "%010d 00000 n \n", offset));
+        }
+        xref.append("trailer\n<< /Size ").append(offsets.size() + 1)
+                .append(" /Root ").append(CATALOG_ID).append(" 0 R >>\nstartxref\n")
+                .append(xrefOffset).append("\n%%EOF\n");
+        write(xref.toString());
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void beginObject(int id) throws IOException {
+        while (offsets.size() < id) {
+            offsets.add(0L);
+        }
+        offsets.set(id - 1, out.getCount());
+        write(id + " 0 obj\n");
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Image too large: " + file.getName());
+        }
+        byte[] data = new byte[(int) length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+        return data;
+    }
+
+    private static PreparedPage encodeFallback(File imageFile, float maxPageSize) {
+        // 按页面尺寸降采样解码，避免大图占满堆内存
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sampleSize * 2) >= maxPageSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+
+        Bitmap bitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, FALLBACK_JPEG_QUALITY, jpeg);
+            return new PreparedPage(bitmap.getWidth(), bitmap.getHeight(), 3, jpeg.toByteArray());
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private static String colorSpace(int components) {
+        switch (components) {
+            case 1: return "/DeviceGray";
+            case 4: return "/DeviceCMYK";
+            default: return "/DeviceRGB";
+        }
+    }
+
+    /**
+     * 从 JPEG 的 SOF 段读取尺寸和通道数，只读取文件头部。
+     */
+    static class JpegInfo {
+        final int width;
+        final int height;
+        final int components;
+
+        private JpegInfo(int width, int height, int components) {
+            this.width = width;
+            this.height = height;
+            this.components = components;
+        }
+
+        static JpegInfo read(@NonNull File file) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readUnsignedShort() != 0xFFD8) {
+                    return null;
+                }
+                while (true) {
+                    int marker = in.readUnsignedByte();
+                    if (marker != 0xFF) {
+                        return null;
+                    }
+                    int type = in.readUnsignedByte();
+                    while (type == 0xFF) {
+                        type = in.readUnsignedByte();
+                    }
+                    if (type == 0xD8 || (type >= 0xD0 && type <= 0xD7) || type == 0x01) {
+                        continue;
+                    }
+                    if (type == 0xD9 || type == 0xDA) {
+                        return null;
+                    }
+                    int length = in.readUnsignedShort();
+                    // SOF0/1/2：基线、扩展顺序和渐进式，PDF 阅读器都支持
+                    if (type == 0xC0 || type == 0xC1 || type == 0xC2) {
+                        int precision = in.readUnsignedByte();
+                        int height = in.readUnsignedShort();
+                        int width = in.readUnsignedShort();
+                        int components = in.readUnsignedByte();
+                        if (precision != 8 || width <= 0 || height <= 0
+                                || (components != 1 && components != 3 && components != 4)) {
+                            return null;
+                        }
+                        return new JpegInfo(width, height, components);
+                    }
+                    if (type >= 0xC3 && type <= 0xCF && type != 0xC4 && type != 0xC8 && type != 0xCC) {
+                        // 无损、分层或算术编码，不保证兼容
+                        return null;
+                    }
+                    skipFully(in, length - 2);
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private static void skipFully(DataInputStream in, int count) throws IOException {
+            int remaining = count;
+            while (remaining > 0) {
+                int skipped = in.skipBytes(remaining);
+                if (skipped <= 0) throw new EOFException();
+                remaining -= skipped;
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream target;
+        private long count = 0;
+
+        CountingOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+}
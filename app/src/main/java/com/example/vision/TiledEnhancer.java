@@ -0,0 +1,213 @@
+package com.example.vision;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分条并行的文档增强。
+ * 页面按行切成带重叠边的条带，在有界线程池上并行处理后拼回整幅图。
+ * 每个条带都多读取滤波半径以外的行，拼接时只保留中间部分，因此没有接缝，结果与整幅处理一致。
+ * CLAHE 和 L 均值依赖整幅图，仍在调用线程上整体计算。
+ */
+class TiledEnhancer {
+    private static final String TAG = "TiledEnhancer";
+    // 大核数量无法直接查询，用上限近似大核簇的规模
+    private static final int MAX_WORKERS = 4;
+    private static final int MIN_STRIP_ROWS = 64;
+    // bilateralFilter(d=9) 半径 4 行，再加 L 通道 3x3 高斯模糊 1 行
+    private static final int DENOISE_HALO = 5;
+
+    private static volatile TiledEnhancer instance;
+
+    private final ExecutorService executor;
+    private final int workerCount;
+
+    private interface StripTask {
+        void run(int start, int end);
+    }
+
+    private TiledEnhancer() {
+        workerCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_WORKERS));
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "doc-enhance-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Log.d(TAG, "Tiled enhancer started with " + workerCount + " workers");
+    }
+
+    static TiledEnhancer getInstance() {
+        if (instance == null) {
+            synchronized (TiledEnhancer.class) {
+                if (instance == null) {
+                    instance = new TiledEnhancer();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 对 BGR 图执行增强，结果就地写回 bgr。
+     */
+    void enhance(@NonNull Mat bgr, @NonNull DocumentProcessor.EnhanceParams params,
+                 @NonNull MatWorkspace workspace, @NonNull ProcessingStats stats) throws InterruptedException {
+        int rows = bgr.rows();
+        int cols = bgr.cols();
+        List<int[]> strips = splitRows(rows);
+        Log.d(TAG, "Enhancing " + cols + "x" + rows + " in " + strips.size() + " strips");
+
+        Mat lab = workspace.acquire(rows, cols, CvType.CV_8UC3);
+        Mat l = workspace.acquire(rows, cols, CvType.CV_8UC1);
+        MatOfDouble meanMat = new MatOfDouble();
+        MatOfDouble stdMat = new MatOfDouble();
+
+        try {
+            // 1. 去噪并转换到 LAB，提取并平滑 L 通道
+            runStrips(strips, (start, end) -> {
+                int windowStart = Math.max(0, start - DENOISE_HALO);
+                int windowEnd = Math.min(rows, end + DENOISE_HALO);
+                int windowRows = windowEnd - windowStart;
+                Mat window = bgr.rowRange(windowStart, windowEnd);
+                Mat stripLab = workspace.acquire(windowRows, cols, CvType.CV_8UC3);
+                Mat stripL = workspace.acquire(windowRows, cols, CvType.CV_8UC1);
+                Mat labInner = stripLab.rowRange(start - windowStart, end - windowStart);
+                Mat lInner = stripL.rowRange(start - windowStart, end - windowStart);
+                Mat labTarget = lab.rowRange(start, end);
+                Mat lTarget = l.rowRange(start, end);
+                try {
+                    Imgproc.bilateralFilter(window, stripLab, 9, params.sigmaColor, 60);
+                    Imgproc.cvtColor(stripLab, stripLab, Imgproc.COLOR_BGR2Lab);
+                    Core.extractChannel(stripLab, stripL, 0);
+                    Imgproc.GaussianBlur(stripL, stripL, new Size(3, 3), 0);
+                    labInner.copyTo(labTarget);
+                    lInner.copyTo(lTarget);
+                } finally {
+                    release(window, labInner, lInner, labTarget, lTarget);
+                    workspace.recycle(stripLab);
+                    workspace.recycle(stripL);
+                }
+            });
+            stats.frameCopy("bilateral");
+            stats.frameCopy("extractL");
+
+            // 2. CLAHE 的分块直方图和亮度均值覆盖整幅图，整体计算
+            Imgproc.createCLAHE(params.claheClipLimit, new Size(8, 8)).apply(l, l);
+            Core.meanStdDev(l, meanMat, stdMat);
+            double brightnessOffset = params.brightnessOffset(meanMat.get(0, 0)[0]);
+            Log.d(TAG, "Brightness adjustment - Factor: " + params.brightnessFactor + ", Offset: " + brightnessOffset);
+
+            // 3. 逐像素的亮度调整和颜色空间转换，无需重叠
+            runStrips(strips, (start, end) -> {
+                Mat lRows = l.rowRange(start, end);
+                Mat labRows = lab.rowRange(start, end);
+                try {
+                    Core.convertScaleAbs(lRows, lRows, params.brightnessFactor, brightnessOffset);
+                    Core.insertChannel(lRows, labRows, 0);
+                    Imgproc.cvtColor(labRows, labRows, Imgproc.COLOR_Lab2BGR);
+                } finally {
+                    release(lRows, labRows);
+                }
+            });
+            stats.frameCopy("insertL");
+
+            // 4. 锐化和最终亮度调整，重叠宽度覆盖高斯核半径。原始 BGR 在第 1 步之后不再需要，直接作为输出
+            int sharpenHalo = (int) Math.ceil(params.sharpenSigma * 3) + 1;
+            runStrips(strips, (start, end) -> {
+                int windowStart = Math.max(0, start - sharpenHalo);
+                int windowEnd = Math.min(rows, end + sharpenHalo);
+                Mat window = lab.rowRange(windowStart, windowEnd);
+                Mat blurred = workspace.acquire(windowEnd - windowStart, cols, CvType.CV_8UC3);
+                Mat blurredInner = blurred.rowRange(start - windowStart, end - windowStart);
+                Mat sourceRows = lab.rowRange(start, end);
+                Mat outputRows = bgr.rowRange(start, end);
+                try {
+                    Imgproc.GaussianBlur(window, blurred, new Size(0, 0), params.sharpenSigma);
+                    Core.addWeighted(sourceRows, params.sharpAmount, blurredInner,
+                            -(params.sharpAmount - 1), 0, outputRows);
+                    Core.convertScaleAbs(outputRows, outputRows, params.finalAlpha, params.finalBeta);
+                } finally {
+                    release(window, blurredInner, sourceRows, outputRows);
+                    workspace.recycle(blurred);
+                }
+            });
+            stats.frameCopy("sharpenBlur");
+            stats.frameCopy("sharpen");
+        } finally {
+            workspace.recycle(lab);
+            workspace.recycle(l);
+            meanMat.release();
+            stdMat.release();
+        }
+    }
+
+    private List<int[]> splitRows(int rows) {
+        int stripCount = Math.max(1, Math.min(workerCount * 2, rows / MIN_STRIP_ROWS));
+        int stripRows = (rows + stripCount - 1) / stripCount;
+        List<int[]> strips = new ArrayList<>();
+        for (int start = 0; start < rows; start += stripRows) {
+            strips.add(new int[]{start, Math.min(rows, start + stripRows)});
+        }
+        return strips;
+    }
+
+    private void runStrips(List<int[]> strips, StripTask task) throws InterruptedException {
+        // 被中断后尚未开始的条带直接跳过
+        AtomicBoolean abandoned = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int[] strip : strips) {
+            futures.add(executor.submit(() -> {
+                if (!abandoned.get()) {
+                    task.run(strip[0], strip[1]);
+                }
+            }));
+        }
+
+        // 等待所有条带结束后再抛出异常，避免仍在运行的任务写入即将归还的缓冲区。
+        // 等待期间被中断也要等已开始的条带结束，之后恢复中断标记再抛出
+        Throwable failure = null;
+        InterruptedException interruption = null;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    if (interruption == null) interruption = e;
+                    abandoned.set(true);
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e.getCause();
+                    break;
+                }
+            }
+        }
+        if (interruption != null) {
+            Thread.currentThread().interrupt();
+            throw interruption;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Strip processing failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    private static void release(Mat... mats) {
+        for (Mat mat : mats) {
+            mat.release();
+        }
+    }
+}
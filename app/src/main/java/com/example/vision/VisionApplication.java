@@ -29,5 +29,14 @@ public class VisionApplication extends Application {
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 内存紧张或退到后台时释放文档处理工作区的空闲缓冲区
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            MatWorkspace.getInstance().clear();
+        }
+    }
+
     // 添加静态方法检查初始化状态
 }
\ No newline at end of file
@@ -0,0 +1,348 @@
+package com.example.vision;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 把多页图片打包成一个 ZIP（CBZ 即扩展名不同的 ZIP）。
+ * 每个条目的 CRC 计算和压缩在线程池上并行完成，写入线程按页序依次写出本地头和数据，
+ * 最后写中央目录，整个文件一次顺序写完，不回填也不二次读取输出。
+ * JPEG、PNG、WebP 本身已经压缩，直接存储（STORED），数据由 transferTo 从源文件拷贝；其他文件才使用 Deflate。
+ * 同时在途的条目数有上限，压缩后的数据只在写出前短暂保存在内存中。
+ */
+class ZipBundleWriter {
+    private static final String TAG = "ZipBundleWriter";
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final short METHOD_STORED = 0;
+    private static final short METHOD_DEFLATED = 8;
+    // 文件名使用 UTF-8 编码
+    private static final short FLAG_UTF8 = 0x0800;
+    private static final short VERSION_STORED = 10;
+    private static final short VERSION_DEFLATED = 20;
+    // 不支持 ZIP64，超出 32 位范围时报错
+    private static final long MAX_ZIP32 = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private static final int MAX_THREADS = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 打包结果统计。
+     */
+    static class Result {
+        final int entryCount;
+        final int storedCount;
+        final long bytes;
+        final long elapsedMs;
+
+        Result(int entryCount, int storedCount, long bytes, long elapsedMs) {
+            this.entryCount = entryCount;
+            this.storedCount = storedCount;
+            this.bytes = bytes;
+            this.elapsedMs = elapsedMs;
+        }
+
+        long getBytesPerSecond() {
+            return bytes * 1000 / Math.max(1, elapsedMs);
+        }
+    }
+
+    // 写出前准备好的条目：CRC 和大小已知，Deflate 条目附带压缩后的数据
+    private static class PreparedEntry {
+        final String name;
+        final File source;
+        final short method;
+        final long crc;
+        final long size;
+        final byte[] compressed;
+
+        PreparedEntry(String name, File source, short method, long crc, long size, byte[] compressed) {
+            this.name = name;
+            this.source = source;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressed = compressed;
+        }
+
+        long getCompressedSize() {
+            return compressed != null ? compressed.length : size;
+        }
+    }
+
+    // 中央目录需要的信息
+    private static class CentralEntry {
+        final byte[] name;
+        final short method;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long offset;
+
+        CentralEntry(byte[] name, short method, long crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+
+    private final int dosTime;
+    private final int dosDate;
+
+    private ZipBundleWriter() {
+        Calendar now = Calendar.getInstance();
+        dosTime = (now.get(Calendar.HOUR_OF_DAY) << 11) | (now.get(Calendar.MINUTE) << 5)
+                | (now.get(Calendar.SECOND) >> 1);
+        dosDate = ((now.get(Calendar.YEAR) - 1980) << 9) | ((now.get(Calendar.MONTH) + 1) << 5)
+                | now.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * 把 sources 按顺序写入 output，条目名取 names 中对应的值。无法读取的源文件跳过。
+     */
+    @NonNull
+    static Result write(@NonNull File output, @NonNull List<File> sources,
+                        @NonNull List<String> names) throws IOException {
+        if (sources.size() != names.size()) {
+            throw new IllegalArgumentException("sources and names differ in size");
+        }
+        if (sources.size() > MAX_ENTRIES) {
+            throw new IOException("Too many entries for ZIP: " + sources.size());
+        }
+        return new ZipBundleWriter().writeAll(output, sources, names);
+    }
+
+    private Result writeAll(File output, List<File> sources, List<String> names) throws IOException {
+        long startTime = SystemClock.elapsedRealtime();
+        int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        // 写入线程之前最多准备好的条目数，限制压缩数据占用的内存
+        int window = threads * 2;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<PreparedEntry>> inFlight = new ArrayDeque<>();
+        List<CentralEntry> centralEntries = new ArrayList<>();
+        int storedCount = 0;
+        int next = 0;
+
+        try (FileOutputStream stream = new FileOutputStream(output)) {
+            FileChannel channel = stream.getChannel();
+            while (next < sources.size() || !inFlight.isEmpty()) {
+                while (next < sources.size() && inFlight.size() < window) {
+                    File source = sources.get(next);
+                    String name = names.get(next);
+                    inFlight.addLast(executor.submit(() -> prepare(source, name)));
+                    next++;
+                }
+
+                PreparedEntry entry = inFlight.removeFirst().get();
+                if (entry == null) continue;
+                centralEntries.add(writeEntry(channel, entry));
+                if (entry.method == METHOD_STORED) storedCount++;
+            }
+
+            if (centralEntries.isEmpty()) {
+                throw new IOException("No entries were written");
+            }
+            writeCentralDirectory(channel, centralEntries);
+            long bytes = channel.position();
+
+            Result result = new Result(centralEntries.size(), storedCount, bytes,
+                    SystemClock.elapsedRealtime() - startTime);
+            Log.d(TAG, String.format(Locale.US,
+                    "Wrote %d entries (%d stored) to %s: %d KB in %d ms (%d KB/s) on %d threads",
+                    result.entryCount, result.storedCount, output.getName(), result.bytes / 1024,
+                    result.elapsedMs, result.getBytesPerSecond() / 1024, threads));
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException("Archive export interrupted").initCause(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Archive export failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在线程池上执行：已压缩的图片只计算 CRC，其他文件读入内存并 Deflate。
+     */
+    private static PreparedEntry prepare(File source, String name) {
+        try {
+            if (!source.exists() || !source.canRead()) {
+                throw new IOException("Source file not accessible");
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            CRC32 crc = new CRC32();
+            if (ImageExportEngine.detectFormat(source) != null) {
+                long size = 0;
+                try (InputStream in = new FileInputStream(source)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, read);
+                        size += read;
+                    }
+                }
+                return new PreparedEntry(name, source, METHOD_STORED, crc.getValue(), size, null);
+            }
+
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            long size = 0;
+            try (InputStream in = new FileInputStream(source)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    size += read;
+                    deflater.setInput(buffer, 0, read);
+                    drain(deflater, compressed);
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drain(deflater, compressed);
+                }
+            } finally {
+                deflater.end();
+            }
+            return new PreparedEntry(name, source, METHOD_DEFLATED, crc.getValue(), size, compressed.toByteArray());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to prepare " + name + ": " + source.getPath(), e);
+            return null;
+        }
+    }
+
+    private static void drain(Deflater deflater, ByteArrayOutputStream out) {
+        byte[] chunk = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = deflater.deflate(chunk)) > 0) {
+            out.write(chunk, 0, count);
+        }
+    }
+
+    private CentralEntry writeEntry(FileChannel channel, PreparedEntry entry) throws IOException {
+        long offset = channel.position();
+        long compressedSize = entry.getCompressedSize();
+        if (offset + compressedSize > MAX_ZIP32 || entry.size > MAX_ZIP32) {
+            throw new IOException("Archive exceeds 4 GB, ZIP64 is not supported");
+        }
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort(entry.method == METHOD_STORED ? VERSION_STORED : VERSION_DEFLATED);
+        header.putShort(FLAG_UTF8);
+        header.putShort(entry.method);
+        header.putShort((short) dosTime);
+        header.putShort((short) dosDate);
+        header.putInt((int) entry.crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) name.length);
+        header.putShort((short) 0);
+        header.put(name);
+        header.flip();
+        writeFully(channel, header);
+
+        if (entry.compressed != null) {
+            writeFully(channel, ByteBuffer.wrap(entry.compressed));
+        } else {
+            transferFully(entry.source, channel, entry.size);
+        }
+        return new CentralEntry(name, entry.method, entry.crc, compressedSize, entry.size, offset);
+    }
+
+    private void writeCentralDirectory(FileChannel channel, List<CentralEntry> entries) throws IOException {
+        long start = channel.position();
+        for (CentralEntry entry : entries) {
+            ByteBuffer header = ByteBuffer.allocate(46 + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort(VERSION_DEFLATED);
+            header.putShort(entry.method == METHOD_STORED ? VERSION_STORED : VERSION_DEFLATED);
+            header.putShort(FLAG_UTF8);
+            header.putShort(entry.method);
+            header.putShort((short) dosTime);
+            header.putShort((short) dosDate);
+            header.putInt((int) entry.crc);
+            header.putInt((int) entry.compressedSize);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.name.length);
+            header.putShort((short) 0);   // extra
+            header.putShort((short) 0);   // comment
+            header.putShort((short) 0);   // disk
+            header.putShort((short) 0);   // internal attributes
+            header.putInt(0);             // external attributes
+            header.putInt((int) entry.offset);
+            header.put(entry.name);
+            header.flip();
+            writeFully(channel, header);
+        }
+        long size = channel.position() - start;
+        if (start + size > MAX_ZIP32) {
+            throw new IOException("Archive exceeds 4 GB, ZIP64 is not supported");
+        }
+
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) entries.size());
+        end.putShort((short) entries.size());
+        end.putInt((int) size);
+        end.putInt((int) start);
+        end.putShort((short) 0);
+        end.flip();
+        writeFully(channel, end);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void transferFully(File source, FileChannel target, long size) throws IOException {
+        try (FileInputStream in = new FileInputStream(source)) {
+            FileChannel sourceChannel = in.getChannel();
+            if (sourceChannel.size() != size) {
+                throw new IOException("Source changed while exporting: " + source.getPath());
+            }
+            long position = 0;
+            while (position < size) {
+                long transferred = sourceChannel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("transferTo made no progress at " + position);
+                }
+                position += transferred;
+            }
+        }
+    }
+}
@@ -1,82 +1,112 @@
 package com.example.vision.network;
 
-import android.util.Log;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.*;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Simpletex 请求签名。
+ * 每个请求都要签名，这里尽量不产生临时对象：MD5 和拼接缓冲按线程复用，十六进制查表编码，
+ * 参数键的排序结果按键集合缓存（同一接口的键集合固定）。签名串包含密钥，不写日志。
+ */
 public class AuthHelper {
-    private static final String TAG = "AuthHelper";
     private static final String CHARS = "AaBbCcDdEeFfGgHhIiJjKkLlMmNnOoPpQqRrSsTtUuVvWwXxYyZz0123456789";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int RANDOM_LENGTH = 16;
 
-    public static Map<String, String> getAuthHeaders(Map<String, String> reqData, String appId, String secret) {
-        Map<String, String> headers = new HashMap<>();
-
-        String randomStr = randomStr(16);
-        String timestamp = String.valueOf(
-                new Date().getTime() / 1000
-        );
+    private static final String KEY_APP_ID = "app-id";
+    private static final String KEY_RANDOM_STR = "random-str";
+    private static final String KEY_TIMESTAMP = "timestamp";
 
-        headers.put("app-id", appId);
-        headers.put("random-str", randomStr);
-        headers.put("timestamp", timestamp);
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    });
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    // 请求参数键集合 -> 加上签名头之后排好序的全部键
+    private static final Map<Set<String>, String[]> SORTED_KEYS = new ConcurrentHashMap<>();
 
-        List<String> sortedKeys = new ArrayList<>();
-        sortedKeys.addAll(reqData.keySet());
-        sortedKeys.add("app-id");
-        sortedKeys.add("random-str");
-        sortedKeys.add("timestamp");
-        Collections.sort(sortedKeys);
+    public static Map<String, String> getAuthHeaders(Map<String, String> reqData, String appId, String secret) {
+        String randomStr = randomStr(RANDOM_LENGTH);
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
 
-        StringBuilder preSignString = new StringBuilder();
-        boolean first = true;
-        for (String key : sortedKeys) {
-            if (!first) {
-                preSignString.append("&");
-            }
-            first = false;
+        Map<String, String> headers = new HashMap<>(8);
+        headers.put(KEY_APP_ID, appId);
+        headers.put(KEY_RANDOM_STR, randomStr);
+        headers.put(KEY_TIMESTAMP, timestamp);
+        headers.put("sign", sign(reqData, appId, secret, randomStr, timestamp));
+        return headers;
+    }
 
+    /**
+     * 按键名排序拼接 key=value，末尾加上 secret，取 MD5 的十六进制小写形式。
+     */
+    static String sign(Map<String, String> reqData, String appId, String secret,
+                       String randomStr, String timestamp) {
+        StringBuilder signString = BUILDER.get();
+        signString.setLength(0);
+        for (String key : sortedKeys(reqData.keySet())) {
             String value;
-            if (key.equals("app-id")) {
+            if (KEY_APP_ID.equals(key)) {
                 value = appId;
-            } else if (key.equals("random-str")) {
+            } else if (KEY_RANDOM_STR.equals(key)) {
                 value = randomStr;
-            } else if (key.equals("timestamp")) {
+            } else if (KEY_TIMESTAMP.equals(key)) {
                 value = timestamp;
             } else {
                 value = reqData.get(key);
             }
-            preSignString.append(key).append("=").append(value);
-        }
-
-        preSignString.append("&secret=").append(secret);
-
-        String signStr = preSignString.toString();
-        Log.d(TAG, "Sign string: " + signStr);
-
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] bytes = md.digest(signStr.getBytes());
-            StringBuilder sign = new StringBuilder();
-            for (byte b : bytes) {
-                sign.append(String.format("%02x", b));
+            if (signString.length() > 0) {
+                signString.append('&');
             }
-            headers.put("sign", sign.toString());
+            signString.append(key).append('=').append(value);
+        }
+        signString.append("&secret=").append(secret);
 
-            Log.d(TAG, "Headers: " + headers);
-        } catch (NoSuchAlgorithmException e) {
-            Log.e(TAG, "MD5 calculation failed", e);
+        byte[] digest = MD5.get().digest(signString.toString().getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xF];
         }
+        return new String(hex);
+    }
 
-        return headers;
+    private static String[] sortedKeys(Set<String> dataKeys) {
+        String[] sorted = SORTED_KEYS.get(dataKeys);
+        if (sorted != null) {
+            return sorted;
+        }
+        Set<String> keys = new HashSet<>(dataKeys);
+        sorted = new String[keys.size() + 3];
+        int count = 0;
+        for (String key : keys) {
+            sorted[count++] = key;
+        }
+        sorted[count++] = KEY_APP_ID;
+        sorted[count++] = KEY_RANDOM_STR;
+        sorted[count] = KEY_TIMESTAMP;
+        Arrays.sort(sorted);
+        SORTED_KEYS.put(keys, sorted);
+        return sorted;
     }
 
     private static String randomStr(int length) {
-        StringBuilder str = new StringBuilder();
-        Random random = new Random();
+        char[] chars = new char[length];
         for (int i = 0; i < length; i++) {
-            str.append(CHARS.charAt(random.nextInt(CHARS.length())));
+            chars[i] = CHARS.charAt(RANDOM.nextInt(CHARS.length()));
         }
-        return str.toString();
+        return new String(chars);
     }
 }
@@ -0,0 +1,76 @@
+package com.example.vision.network;
+
+import android.util.Log;
+import com.example.vision.BuildConfig;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.logging.HttpLoggingInterceptor;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网络层共用的 OkHttpClient。
+ * 所有请求共享一个连接池和调度器，识别请求可以复用已建立的 HTTP/2 连接，省去重复的 TLS 握手。
+ * 需要不同超时的调用方通过 newBuilder() 派生，派生出的客户端仍然共享连接池和线程。
+ */
+final class HttpClients {
+    private static final String TAG = "HttpClients";
+
+    private static final long TIMEOUT_SECONDS = 30;
+    // 识别接口只有一个主机，同时上传的图片不宜过多，否则每张都变慢
+    private static final int MAX_REQUESTS = 8;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    // HTTP/2 连接空闲时定期 ping，避免被中间网络设备悄悄断开
+    private static final long PING_INTERVAL_SECONDS = 30;
+
+    private static volatile OkHttpClient shared;
+
+    private HttpClients() {
+    }
+
+    static OkHttpClient get() {
+        if (shared == null) {
+            synchronized (HttpClients.class) {
+                if (shared == null) {
+                    shared = create();
+                }
+            }
+        }
+        return shared;
+    }
+
+    private static OkHttpClient create() {
+        OkHttpClient.Builder builder = newBuilder();
+        // 请求体包含整张图片，只在调试版本记录，正式版本不加日志拦截器，避免缓冲和复制上传内容
+        if (BuildConfig.DEBUG) {
+            HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor(message ->
+                    Log.d(TAG, "OkHttp: " + message));
+            loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
+            builder.addInterceptor(loggingInterceptor);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 与共享客户端相同的连接、调度和超时配置，不含日志拦截器。负载测试用它构建独立的客户端。
+     */
+    static OkHttpClient.Builder newBuilder() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .pingInterval(PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true);
+    }
+}
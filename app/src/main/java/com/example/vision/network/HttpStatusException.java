@@ -0,0 +1,34 @@
+package com.example.vision.network;
+
+import java.io.IOException;
+
+/**
+ * 服务端返回非 2xx 状态码。
+ * 429 和 5xx 视为暂时性错误，可以退避后重试；retryAfterMillis 来自 Retry-After 头，没有时为 0。
+ */
+public class HttpStatusException extends IOException {
+    private final int code;
+    private final long retryAfterMillis;
+
+    public HttpStatusException(int code, String message, long retryAfterMillis) {
+        super(message);
+        this.code = code;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public boolean isRateLimited() {
+        return code == 429;
+    }
+
+    public boolean isRetryable() {
+        return code == 429 || code >= 500;
+    }
+}
@@ -10,24 +10,29 @@ import okhttp3.ResponseBody;
 import android.util.Log;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 
 public class NetworkManager {
     private static final String TAG = "NetworkManager";
-    private static NetworkManager instance;
+    private static volatile NetworkManager instance;
     private final OkHttpClient client;
 
     // API endpoints
     private static final String LATEX_API_URL = "https://api.example.com/latex/recognize";
     private static final String DOCUMENT_API_URL = "https://api.example.com/document/correct";
 
+    private final String latexApiUrl;
+    private final String documentApiUrl;
+
     private NetworkManager() {
-        // 配置OkHttpClient，设置超时时间等
-        client = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
+        // 与其他网络请求共用连接池和调度器
+        this(HttpClients.get(), LATEX_API_URL, DOCUMENT_API_URL);
+    }
+
+    // 测试时指向本地模拟服务器
+    NetworkManager(OkHttpClient client, String latexApiUrl, String documentApiUrl) {
+        this.client = client;
+        this.latexApiUrl = latexApiUrl;
+        this.documentApiUrl = documentApiUrl;
     }
 
     // 单例模式获取实例
@@ -53,7 +58,7 @@ public class NetworkManager {
 
         // 构建请求
         Request request = new Request.Builder()
-                .url(LATEX_API_URL)
+                .url(latexApiUrl)
                 .post(requestBody)
                 .build();
 
@@ -91,7 +96,7 @@ public class NetworkManager {
                 .build();
 
         Request request = new Request.Builder()
-                .url(DOCUMENT_API_URL)
+                .url(documentApiUrl)
                 .post(requestBody)
                 .build();
 
@@ -0,0 +1,258 @@
+package com.example.vision.network;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 识别结果的磁盘缓存，也是导出可搜索 PDF 时每页文本的唯一来源。
+ * 键由待识别图片字节和请求参数签名的 SHA-256 组成，同一张图片再次识别、重试、导出或从历史记录重新打开时
+ * 直接返回已有结果，不需要网络。结果文本保存在 files/ocr_cache/<key>.txt，
+ * 索引按访问顺序保存在 files/ocr_cache.json；超过有效期的条目在读取时丢弃，总大小超出预算时淘汰最久未用的条目。
+ * 命中只更新内存中的访问顺序，索引在写入或删除条目时才落盘，进程退出时最多丢失最近几次命中带来的顺序变化。
+ */
+public class OcrResultCache {
+    private static final String TAG = "OcrResultCache";
+    private static final String CACHE_DIR = "ocr_cache";
+    private static final String INDEX_FILE = "ocr_cache.json";
+    // 合并前每页文本单独保存的目录，内容已由本缓存覆盖
+    private static final String LEGACY_PAGE_TEXT_DIR = "page_text";
+    private static final long MAX_CACHE_BYTES = 8L * 1024 * 1024;
+    private static final long TTL_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static volatile OcrResultCache instance;
+
+    private final File cacheDir;
+    private final File indexFile;
+    // LinkedHashMap 按访问顺序排列，迭代顺序即淘汰顺序
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0;
+
+    private static class Entry {
+        final long createdAt;
+        final long bytes;
+
+        Entry(long createdAt, long bytes) {
+            this.createdAt = createdAt;
+            this.bytes = bytes;
+        }
+    }
+
+    private OcrResultCache(Context context) {
+        cacheDir = new File(context.getFilesDir(), CACHE_DIR);
+        indexFile = new File(context.getFilesDir(), INDEX_FILE);
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Cannot create OCR cache directory");
+        }
+        loadIndex();
+        deleteLegacyPageText(new File(context.getFilesDir(), LEGACY_PAGE_TEXT_DIR));
+    }
+
+    public static OcrResultCache getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (OcrResultCache.class) {
+                if (instance == null) {
+                    instance = new OcrResultCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 计算缓存键。paramsSignature 应包含识别类型和所有影响识别结果的请求参数。
+     */
+    @NonNull
+    public static String computeKey(@NonNull File imageFile, @NonNull String paramsSignature) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+
+        try (InputStream in = new FileInputStream(imageFile)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        digest.update(paramsSignature.getBytes(StandardCharsets.UTF_8));
+
+        byte[] hash = digest.digest();
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 查找缓存的识别结果，过期或文件丢失的条目会被移除并返回 null。
+     */
+    @Nullable
+    public synchronized String get(@NonNull String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        File file = new File(cacheDir, key + ".txt");
+        if (System.currentTimeMillis() - entry.createdAt > TTL_MILLIS || !file.exists()) {
+            Log.d(TAG, "Dropping stale entry " + key);
+            remove(key, entry);
+            saveIndex();
+            return null;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) entry.bytes);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cached result " + key, e);
+            remove(key, entry);
+            saveIndex();
+            return null;
+        }
+    }
+
+    /**
+     * 保存识别结果，先写临时文件再改名，读取方不会看到写了一半的内容。
+     */
+    public synchronized void put(@NonNull String key, @NonNull String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        File file = new File(cacheDir, key + ".txt");
+        File tempFile = new File(cacheDir, key + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(data);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to cache result " + key, e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            Log.w(TAG, "Failed to commit cached result " + key);
+            tempFile.delete();
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(System.currentTimeMillis(), data.length));
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += data.length;
+        trimToSize();
+        saveIndex();
+    }
+
+    private void trimToSize() {
+        if (totalBytes <= MAX_CACHE_BYTES) {
+            return;
+        }
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > MAX_CACHE_BYTES && iterator.hasNext()) {
+            Map.Entry<String, Entry> item = iterator.next();
+            iterator.remove();
+            totalBytes -= item.getValue().bytes;
+            deleteFile(item.getKey());
+        }
+        Log.d(TAG, "Trimmed cache to " + entries.size() + " entries, " + totalBytes / 1024 + " KB");
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        totalBytes -= entry.bytes;
+        deleteFile(key);
+    }
+
+    private void deleteFile(String key) {
+        File file = new File(cacheDir, key + ".txt");
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete cached result " + key);
+        }
+    }
+
+    private static void deleteLegacyPageText(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+        if (dir.delete()) {
+            Log.d(TAG, "Removed legacy page text directory");
+        }
+    }
+
+    private void loadIndex() {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (FileInputStream in = new FileInputStream(indexFile)) {
+            byte[] data = new byte[(int) indexFile.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            // 索引按从旧到新保存，依次插入即可恢复访问顺序
+            JSONArray array = new JSONArray(new String(data, 0, offset, StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject json = array.getJSONObject(i);
+                Entry entry = new Entry(json.getLong("createdAt"), json.getLong("bytes"));
+                entries.put(json.getString("key"), entry);
+                totalBytes += entry.bytes;
+            }
+            Log.d(TAG, "Loaded " + entries.size() + " cache entries, " + totalBytes / 1024 + " KB");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load cache index, starting empty", e);
+            entries.clear();
+            totalBytes = 0;
+        }
+    }
+
+    private void saveIndex() {
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            JSONArray array = new JSONArray();
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                JSONObject json = new JSONObject();
+                json.put("key", item.getKey());
+                json.put("createdAt", item.getValue().createdAt);
+                json.put("bytes", item.getValue().bytes);
+                array.put(json);
+            }
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tempFile.renameTo(indexFile)) {
+                Log.w(TAG, "Failed to commit cache index");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to save cache index", e);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.example.vision.network;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 识别请求调度。
+ * 所有识别请求都从这里发出：同时进行的请求数有上限，发送速率受令牌桶限制，
+ * 429 和 5xx 按指数退避重试，用户正在查看的页面排在批量任务之前。
+ * 多页识别时在这些限制内并发，吞吐量由服务端允许的速率决定，而不是逐页串行。
+ * 识别结果经 OcrResultCache 缓存，同一张图片不会重复请求。
+ */
+public class OcrScheduler {
+    private static final String TAG = "OcrScheduler";
+
+    public static final String TYPE_LATEX = "latex";
+    public static final String TYPE_DOCUMENT = "document";
+
+    // 数值越小越先执行，同一优先级按提交顺序
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_BATCH = 10;
+
+    // 与 HttpClients 的每主机请求上限一致
+    private static final int MAX_CONCURRENT = 4;
+    // 平均每秒 2 个请求，允许 4 个的突发
+    private static final double REQUESTS_PER_SECOND = 2.0;
+    private static final int BURST = 4;
+    private static final int MAX_ATTEMPTS = 5;
+    // 每张公式图片编码后不超过 300 KB，一批 8 张约 2.4 MB
+    private static final int MAX_BATCH_SIZE = 8;
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    private static volatile OcrScheduler instance;
+
+    private final ThreadPoolExecutor executor;
+    @Nullable
+    private final OcrResultCache cache;
+    private final Recognizer recognizer;
+    private final TokenBucket rateLimiter;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 发出一次识别请求，不含重试和限速。
+     */
+    interface Recognizer {
+        @NonNull
+        String recognize(@NonNull File imageFile, @NonNull String type) throws IOException;
+
+        /**
+         * 一次请求识别多张公式图片，结果与 imageFiles 一一对应。
+         */
+        @NonNull
+        List<String> recognizeLatexBatch(@NonNull List<File> imageFiles) throws IOException;
+    }
+
+    private static class ApiRecognizer implements Recognizer {
+        @NonNull
+        @Override
+        public String recognize(@NonNull File imageFile, @NonNull String type) throws IOException {
+            SimpletexApiManager api = SimpletexApiManager.getInstance();
+            return TYPE_LATEX.equals(type) ? api.recognizeLatex(imageFile) : api.recognizePdf(imageFile);
+        }
+
+        @NonNull
+        @Override
+        public List<String> recognizeLatexBatch(@NonNull List<File> imageFiles) throws IOException {
+            return SimpletexApiManager.getInstance().recognizeLatexBatch(imageFiles);
+        }
+    }
+
+    private OcrScheduler(Context context) {
+        this(OcrResultCache.getInstance(context), new ApiRecognizer(), MAX_CONCURRENT, REQUESTS_PER_SECOND, BURST);
+    }
+
+    /**
+     * 测试用：替换请求方式和并发、限速参数，cache 为 null 时不缓存，每次都发请求。
+     */
+    OcrScheduler(@Nullable OcrResultCache cache, @NonNull Recognizer recognizer,
+                 int maxConcurrent, double requestsPerSecond, int burst) {
+        this.cache = cache;
+        this.recognizer = recognizer;
+        rateLimiter = new TokenBucket(requestsPerSecond, burst);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+                IDLE_THREAD_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ocr-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static OcrScheduler getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (OcrScheduler.class) {
+                if (instance == null) {
+                    instance = new OcrScheduler(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 提交一个识别请求，type 为 TYPE_LATEX 或 TYPE_DOCUMENT，priority 为 PRIORITY_* 之一。
+     * 取消返回的 Future 会中断正在进行的请求或退避等待。
+     */
+    @NonNull
+    public Future<String> submit(@NonNull File imageFile, @NonNull String type, int priority) {
+        Task<String> task = new Task<>(() -> execute(imageFile, type), priority);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * 提交多张图片，返回的结果与 imageFiles 一一对应，缓存命中的页面直接完成。
+     * 公式识别每 MAX_BATCH_SIZE 张打包成一个批量请求，整批只需一次签名和一次往返；
+     * 服务端拒绝批量请求时，这一批退回逐张请求。文档识别没有批量接口，逐张提交，
+     * 在共享的 HTTP/2 连接上并发发送。批量请求和逐张请求一样受令牌桶限速并按退避重试。
+     * 取消打包页面的结果不会中断整批请求。
+     */
+    @NonNull
+    public List<Future<String>> submitBatch(@NonNull List<File> imageFiles, @NonNull String type, int priority) {
+        List<Future<String>> results = new ArrayList<>(imageFiles.size());
+        List<File> chunk = new ArrayList<>(MAX_BATCH_SIZE);
+        List<CompletableFuture<String>> pages = new ArrayList<>(MAX_BATCH_SIZE);
+        for (File imageFile : imageFiles) {
+            String cached = null;
+            try {
+                cached = getCached(imageFile, type);
+            } catch (IOException e) {
+                // 读不到图片时交给识别请求报告错误
+                Log.w(TAG, "Cache lookup failed for " + imageFile.getName(), e);
+            }
+            if (cached != null) {
+                results.add(CompletableFuture.completedFuture(cached));
+            } else if (!TYPE_LATEX.equals(type)) {
+                results.add(submit(imageFile, type, priority));
+            } else {
+                CompletableFuture<String> page = new CompletableFuture<>();
+                chunk.add(imageFile);
+                pages.add(page);
+                results.add(page);
+                if (chunk.size() == MAX_BATCH_SIZE) {
+                    submitChunk(chunk, pages, priority);
+                    chunk = new ArrayList<>(MAX_BATCH_SIZE);
+                    pages = new ArrayList<>(MAX_BATCH_SIZE);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            submitChunk(chunk, pages, priority);
+        }
+        return results;
+    }
+
+    private void submitChunk(List<File> chunk, List<CompletableFuture<String>> pages, int priority) {
+        if (chunk.size() == 1) {
+            executor.execute(new Task<Void>(() -> {
+                completeSingle(chunk.get(0), pages.get(0));
+                return null;
+            }, priority));
+            return;
+        }
+        executor.execute(new Task<Void>(() -> {
+            executeBatch(chunk, pages, priority);
+            return null;
+        }, priority));
+    }
+
+    /**
+     * 执行一个批量请求并按序号把结果分发给各页。限流和服务端错误在重试用尽后交给各页；
+     * 其他失败（服务端不接受批量、结果数量不符）时这一批逐张重新排队。
+     */
+    private void executeBatch(List<File> chunk, List<CompletableFuture<String>> pages, int priority)
+            throws InterruptedException {
+        List<String> texts;
+        try {
+            texts = withRetries("batch of " + chunk.size(), () -> recognizer.recognizeLatexBatch(chunk));
+        } catch (HttpStatusException e) {
+            if (e.isRetryable()) {
+                for (CompletableFuture<String> page : pages) {
+                    page.completeExceptionally(e);
+                }
+                return;
+            }
+            Log.w(TAG, "Batch rejected, falling back to single requests", e);
+            texts = null;
+        } catch (IOException e) {
+            Log.w(TAG, "Batch failed, falling back to single requests", e);
+            texts = null;
+        } catch (InterruptedException e) {
+            for (CompletableFuture<String> page : pages) {
+                page.cancel(false);
+            }
+            throw e;
+        }
+
+        if (texts == null) {
+            for (int i = 0; i < chunk.size(); i++) {
+                File imageFile = chunk.get(i);
+                CompletableFuture<String> page = pages.get(i);
+                executor.execute(new Task<Void>(() -> {
+                    completeSingle(imageFile, page);
+                    return null;
+                }, priority));
+            }
+            return;
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            if (cache != null) {
+                try {
+                    cache.put(OcrResultCache.computeKey(chunk.get(i), paramsSignature(TYPE_LATEX)), texts.get(i));
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to cache batch result for " + chunk.get(i).getName(), e);
+                }
+            }
+            pages.get(i).complete(texts.get(i));
+        }
+    }
+
+    private void completeSingle(File imageFile, CompletableFuture<String> page) throws InterruptedException {
+        try {
+            page.complete(execute(imageFile, TYPE_LATEX));
+        } catch (IOException | RuntimeException e) {
+            page.completeExceptionally(e);
+        } catch (InterruptedException e) {
+            page.cancel(false);
+            throw e;
+        }
+    }
+
+    /**
+     * 返回已缓存的识别结果，没有时返回 null。只查缓存，不发请求。
+     */
+    @Nullable
+    public String getCached(@NonNull File imageFile, @NonNull String type) throws IOException {
+        if (cache == null) {
+            return null;
+        }
+        return cache.get(OcrResultCache.computeKey(imageFile, paramsSignature(type)));
+    }
+
+    /**
+     * 提交并等待识别结果，在后台线程上调用。
+     */
+    @NonNull
+    public String recognize(@NonNull File imageFile, @NonNull String type, int priority)
+            throws IOException, InterruptedException {
+        return await(submit(imageFile, type, priority));
+    }
+
+    /**
+     * 等待 submit() 返回的结果，把执行中的异常还原为 IOException。当前线程被中断时取消该请求。
+     */
+    @NonNull
+    public static String await(@NonNull Future<String> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("识别失败: " + cause, cause);
+        }
+    }
+
+    /**
+     * 先查识别缓存，命中时不占用令牌也不访问网络。
+     */
+    private String execute(File imageFile, String type) throws IOException, InterruptedException {
+        if (cache == null) {
+            return withRetries(imageFile.getName(), () -> recognizer.recognize(imageFile, type));
+        }
+        String key = OcrResultCache.computeKey(imageFile, paramsSignature(type));
+        String cached = cache.get(key);
+        if (cached != null) {
+            Log.d(TAG, "Cache hit for " + imageFile.getName());
+            return cached;
+        }
+
+        String text = withRetries(imageFile.getName(), () -> recognizer.recognize(imageFile, type));
+        cache.put(key, text);
+        return text;
+    }
+
+    private static String paramsSignature(String type) {
+        return type + "|" + SimpletexApiManager.REQUEST_PARAMS_VERSION;
+    }
+
+    private interface Request<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * 每次发送前从令牌桶取令牌，429 和 5xx 退避后重试，最多 MAX_ATTEMPTS 次。
+     */
+    private <T> T withRetries(String label, Request<T> request) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            rateLimiter.acquire();
+            try {
+                return request.run();
+            } catch (HttpStatusException e) {
+                if (!e.isRetryable() || attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                long delay = backoffMillis(attempt, e.getRetryAfterMillis());
+                Log.w(TAG, "HTTP " + e.getCode() + " for " + label
+                        + ", retry " + attempt + " in " + delay + " ms");
+                if (e.isRateLimited()) {
+                    // 被限流时所有请求一起退避，否则其他线程会继续撞上 429
+                    rateLimiter.pause(delay);
+                } else {
+                    Thread.sleep(delay);
+                }
+            }
+        }
+    }
+
+    /**
+     * 指数退避加一半随机抖动，避免多个请求同时重试；服务端给出 Retry-After 时不短于该值。
+     */
+    private static long backoffMillis(int attempt, long retryAfterMillis) {
+        long exponential = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << (attempt - 1));
+        long delay = exponential / 2 + ThreadLocalRandom.current().nextLong(exponential / 2 + 1);
+        return Math.max(delay, retryAfterMillis);
+    }
+
+    /**
+     * 按优先级排队的任务。
+     */
+    private final class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+        private final int priority;
+        private final long order;
+
+        Task(Callable<T> callable, int priority) {
+            super(callable);
+            this.priority = priority;
+            this.order = sequence.getAndIncrement();
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.*;
+import java.util.List;
 import java.util.Map;
 
 public interface SimpletexApi {
@@ -13,7 +14,7 @@ public interface SimpletexApi {
     Call<ResponseBody> img2tex(
             @HeaderMap Map<String, String> headers,
             @PartMap Map<String, RequestBody> formData,
-            @Part MultipartBody.Part file
+            @Part List<MultipartBody.Part> files
     );
 
     @Multipart
@@ -21,6 +22,6 @@ public interface SimpletexApi {
     Call<ResponseBody> img2pdf(
             @HeaderMap Map<String, String> headers,
             @PartMap Map<String, RequestBody> formData,
-            @Part MultipartBody.Part file
+            @Part List<MultipartBody.Part> files
     );
 }
\ No newline at end of file
@@ -1,19 +1,24 @@
 package com.example.vision.network;
 
 import android.util.Log;
+import androidx.annotation.NonNull;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
-import okhttp3.logging.HttpLoggingInterceptor;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import retrofit2.Call;
-import retrofit2.Callback;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -22,40 +27,28 @@ public class SimpletexApiManager {
     private static final String BASE_URL = "https://server.simpletex.cn";
     private static final String APP_ID = "ilVieOcIosU2amiW01Edxzmv";
     private static final String APP_SECRET = "KGfooNXHFAAbXbXW4v6x8LCEcWQYWgGm";
+    // 单次识别的总超时，包括上传和服务端处理
+    private static final long CALL_TIMEOUT_SECONDS = 120;
+    // 请求参数或上传编码配置改变时递增，旧的识别缓存随之失效
+    static final String REQUEST_PARAMS_VERSION = "1";
 
-    private static SimpletexApiManager instance;
+    private static volatile SimpletexApiManager instance;
     private final SimpletexApi api;
-    private final OkHttpClient client;
-
-    public interface ApiCallback {
-        void onSuccess(String response);
-        void onFailure(String error);
-    }
 
     private SimpletexApiManager() {
-        client = createOkHttpClient();
+        this(BASE_URL, HttpClients.get());
+    }
 
+    // 测试时指向本地模拟服务器
+    SimpletexApiManager(String baseUrl, OkHttpClient client) {
         Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BASE_URL)
+                .baseUrl(baseUrl)
                 .client(client)
                 .build();
 
         api = retrofit.create(SimpletexApi.class);
     }
 
-    private OkHttpClient createOkHttpClient() {
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor(message ->
-                Log.d(TAG, "OkHttp: " + message));
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-
-        return new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .addInterceptor(loggingInterceptor)
-                .build();
-    }
-
     public static SimpletexApiManager getInstance() {
         if (instance == null) {
             synchronized (SimpletexApiManager.class) {
@@ -67,171 +60,200 @@ public class SimpletexApiManager {
         return instance;
     }
 
-    public void recognizeLatex(File imageFile, ApiCallback callback) {
-        try {
-            Log.d(TAG, "Starting LaTeX recognition for file: " + imageFile.getAbsolutePath());
-
-            File compressedFile = compressImage(imageFile);
-            if (compressedFile == null) {
-                callback.onFailure("图片压缩失败");
-                return;
-            }
+    /**
+     * 识别公式图片，返回 LaTeX。阻塞直到请求完成，在后台线程上调用。
+     */
+    @NonNull
+    public String recognizeLatex(@NonNull File imageFile) throws IOException {
+        Log.d(TAG, "Starting LaTeX recognition for file: " + imageFile.getAbsolutePath());
+        return recognizeLatex(UploadImageEncoder.encode(imageFile, UploadImageEncoder.LATEX), imageFile.getName());
+    }
 
-            Map<String, String> reqData = new HashMap<>();
-            reqData.put("use_batch", "false");
+    /**
+     * 上传已编码的公式图片。
+     */
+    String recognizeLatex(UploadImageEncoder.Encoded encoded, String name) throws IOException {
+        Map<String, String> reqData = new HashMap<>();
+        reqData.put("use_batch", "false");
 
-            Map<String, String> headers = AuthHelper.getAuthHeaders(reqData, APP_ID, APP_SECRET);
+        JSONObject res = uploadSingle(encoded, name, reqData, api::img2tex);
+        try {
+            return res.getString("latex");
+        } catch (JSONException e) {
+            throw new IOException("解析响应失败: " + e.getMessage(), e);
+        }
+    }
 
-            Map<String, RequestBody> formData = new HashMap<>();
-            for (Map.Entry<String, String> entry : reqData.entrySet()) {
-                formData.put(entry.getKey(), RequestBody.create(MediaType.parse("text/plain"), entry.getValue()));
-            }
+    /**
+     * 识别文档图片，返回 Markdown 文本。阻塞直到请求完成，在后台线程上调用。
+     */
+    @NonNull
+    public String recognizePdf(@NonNull File imageFile) throws IOException {
+        Log.d(TAG, "Starting PDF recognition for file: " + imageFile.getAbsolutePath());
+        return recognizePdf(UploadImageEncoder.encode(imageFile, UploadImageEncoder.DOCUMENT), imageFile.getName());
+    }
 
-            RequestBody requestFile = RequestBody.create(
-                    MediaType.parse("image/*"),
-                    compressedFile
-            );
-
-            MultipartBody.Part filePart = MultipartBody.Part.createFormData(
-                    "file",
-                    compressedFile.getName(),
-                    requestFile
-            );
-
-            api.img2tex(headers, formData, filePart).enqueue(new Callback<ResponseBody>() {
-                @Override
-                public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
-                    try {
-                        if (response.isSuccessful() && response.body() != null) {
-                            String responseStr = response.body().string();
-                            Log.d(TAG, "Response: " + responseStr);
-
-                            JSONObject jsonResponse = new JSONObject(responseStr);
-                            if (jsonResponse.getBoolean("status")) {
-                                JSONObject res = jsonResponse.getJSONObject("res");
-                                String latex = res.getString("latex");
-                                callback.onSuccess(latex);
-                            } else {
-                                String message = jsonResponse.optString("message", "Unknown error");
-                                callback.onFailure("识别失败: " + message);
-                            }
-                        } else {
-                            String errorBody = response.errorBody() != null ?
-                                    response.errorBody().string() : "Unknown error";
-                            Log.e(TAG, "Error response: " + errorBody);
-                            callback.onFailure("请求失败: " + response.code() + " " + errorBody);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Response parsing failed", e);
-                        callback.onFailure("解析响应失败: " + e.getMessage());
-                    } finally {
-                        if (compressedFile.exists()) {
-                            compressedFile.delete();
-                        }
-                    }
-                }
+    /**
+     * 上传已编码的文档图片。
+     */
+    String recognizePdf(UploadImageEncoder.Encoded encoded, String name) throws IOException {
+        Map<String, String> reqData = new HashMap<>();
+        // 可以添加自定义包裹符号，如果需要的话
+        reqData.put("inline_formula_wrapper", "[\"$\",\"$\"]");
+        reqData.put("isolated_formula_wrapper", "[\"$$\",\"$$\"]");
 
-                @Override
-                public void onFailure(Call<ResponseBody> call, Throwable t) {
-                    Log.e(TAG, "Network request failed", t);
-                    callback.onFailure("网络请求失败: " + t.getMessage());
-                    if (compressedFile.exists()) {
-                        compressedFile.delete();
-                    }
-                }
-            });
+        JSONObject res = uploadSingle(encoded, name, reqData, api::img2pdf);
+        try {
+            return res.getString("content");
+        } catch (JSONException e) {
+            throw new IOException("解析响应失败: " + e.getMessage(), e);
+        }
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Request preparation failed", e);
-            callback.onFailure("请求准备失败: " + e.getMessage());
+    /**
+     * 一次请求识别多张公式图片（use_batch=true），结果按 imageFiles 的顺序返回。
+     * 所有图片共用一次签名和一次往返。服务端拒绝批量请求，或者返回的结果与图片数量对不上时抛出 IOException，
+     * 是否逐张重试由调用方决定。只经由 OcrScheduler.submitBatch 调用，以便限速、退避重试和缓存。
+     */
+    @NonNull
+    List<String> recognizeLatexBatch(@NonNull List<File> imageFiles) throws IOException {
+        Log.d(TAG, "Starting batch LaTeX recognition for " + imageFiles.size() + " images");
+        List<UploadImageEncoder.Encoded> images = new ArrayList<>(imageFiles.size());
+        List<String> names = new ArrayList<>(imageFiles.size());
+        for (File imageFile : imageFiles) {
+            images.add(UploadImageEncoder.encode(imageFile, UploadImageEncoder.LATEX));
+            names.add(imageFile.getName());
         }
+        return recognizeLatexBatch(images, names);
     }
 
-    public void recognizePdf(File imageFile, ApiCallback callback) {
-        try {
-            Log.d(TAG, "Starting PDF recognition for file: " + imageFile.getAbsolutePath());
+    /**
+     * 批量上传已编码的公式图片，names 与 images 一一对应。
+     */
+    List<String> recognizeLatexBatch(List<UploadImageEncoder.Encoded> images, List<String> names)
+            throws IOException {
+        Map<String, String> reqData = new HashMap<>();
+        reqData.put("use_batch", "true");
+
+        List<MultipartBody.Part> fileParts = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            // 文件名带序号，同名裁剪图也能区分
+            fileParts.add(createFilePart(i + "_" + names.get(i), images.get(i)));
+        }
 
-            File compressedFile = compressImage(imageFile);
-            if (compressedFile == null) {
-                callback.onFailure("图片压缩失败");
-                return;
+        Object res = upload(reqData, fileParts, api::img2tex);
+        try {
+            if (res instanceof JSONObject && images.size() == 1) {
+                return Collections.singletonList(((JSONObject) res).getString("latex"));
             }
+            if (!(res instanceof JSONArray)) {
+                throw new IOException("批量识别返回格式不符");
+            }
+            JSONArray items = (JSONArray) res;
+            if (items.length() != images.size()) {
+                throw new IOException("批量识别结果数量不符: " + items.length() + "/" + images.size());
+            }
+            List<String> results = new ArrayList<>(items.length());
+            for (int i = 0; i < items.length(); i++) {
+                Object item = items.get(i);
+                results.add(item instanceof JSONObject ? ((JSONObject) item).getString("latex") : item.toString());
+            }
+            return results;
+        } catch (JSONException e) {
+            throw new IOException("解析响应失败: " + e.getMessage(), e);
+        }
+    }
 
-            Map<String, String> reqData = new HashMap<>();
-            // 可以添加自定义包裹符号，如果需要的话
-            reqData.put("inline_formula_wrapper", "[\"$\",\"$\"]");
-            reqData.put("isolated_formula_wrapper", "[\"$$\",\"$$\"]");
+    private interface Endpoint {
+        Call<ResponseBody> create(Map<String, String> headers, Map<String, RequestBody> formData,
+                                  List<MultipartBody.Part> files);
+    }
 
-            Map<String, String> headers = AuthHelper.getAuthHeaders(reqData, APP_ID, APP_SECRET);
+    /**
+     * 上传一张已编码的图片，图片在调用方线程上解码和编码各一次（见 UploadImageEncoder），
+     * 请求也在当前线程上同步执行，不经过主线程回调。返回响应中的 res 对象。
+     */
+    private JSONObject uploadSingle(UploadImageEncoder.Encoded encoded, String name,
+                                    Map<String, String> reqData, Endpoint endpoint) throws IOException {
+        Object res = upload(reqData, Collections.singletonList(createFilePart(name, encoded)), endpoint);
+        if (!(res instanceof JSONObject)) {
+            throw new IOException("解析响应失败: 返回格式不符");
+        }
+        return (JSONObject) res;
+    }
 
-            Map<String, RequestBody> formData = new HashMap<>();
-            for (Map.Entry<String, String> entry : reqData.entrySet()) {
-                formData.put(entry.getKey(), RequestBody.create(MediaType.parse("text/plain"), entry.getValue()));
-            }
+    private static MultipartBody.Part createFilePart(String name, UploadImageEncoder.Encoded encoded) {
+        // 直接从编码结果上传，不落盘，也不再从闪存读回
+        RequestBody requestFile = RequestBody.create(
+                MediaType.parse(encoded.mimeType),
+                encoded.data
+        );
+
+        return MultipartBody.Part.createFormData(
+                "file",
+                uploadFileName(name, encoded.mimeType),
+                requestFile
+        );
+    }
 
-            RequestBody requestFile = RequestBody.create(
-                    MediaType.parse("image/*"),
-                    compressedFile
-            );
-
-            MultipartBody.Part filePart = MultipartBody.Part.createFormData(
-                    "file",
-                    compressedFile.getName(),
-                    requestFile
-            );
-
-            api.img2pdf(headers, formData, filePart).enqueue(new Callback<ResponseBody>() {
-                @Override
-                public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
-                    try {
-                        if (response.isSuccessful() && response.body() != null) {
-                            String responseStr = response.body().string();
-                            Log.d(TAG, "Response: " + responseStr);
-
-                            JSONObject jsonResponse = new JSONObject(responseStr);
-                            if (jsonResponse.getBoolean("status")) {
-                                JSONObject res = jsonResponse.getJSONObject("res");
-                                String content = res.getString("content");
-                                callback.onSuccess(content);
-                            } else {
-                                String message = jsonResponse.optString("message", "Unknown error");
-                                callback.onFailure("识别失败: " + message);
-                            }
-                        } else {
-                            String errorBody = response.errorBody() != null ?
-                                    response.errorBody().string() : "Unknown error";
-                            Log.e(TAG, "Error response: " + errorBody);
-                            callback.onFailure("请求失败: " + response.code() + " " + errorBody);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Response parsing failed", e);
-                        callback.onFailure("解析响应失败: " + e.getMessage());
-                    } finally {
-                        if (compressedFile.exists()) {
-                            compressedFile.delete();
-                        }
-                    }
-                }
+    /**
+     * 签名并在当前线程上同步发送请求，返回响应中的 res 字段（对象或批量结果数组）。
+     */
+    private Object upload(Map<String, String> reqData, List<MultipartBody.Part> fileParts,
+                          Endpoint endpoint) throws IOException {
+        Map<String, String> headers = AuthHelper.getAuthHeaders(reqData, APP_ID, APP_SECRET);
 
-                @Override
-                public void onFailure(Call<ResponseBody> call, Throwable t) {
-                    Log.e(TAG, "Network request failed", t);
-                    callback.onFailure("网络请求失败: " + t.getMessage());
-                    if (compressedFile.exists()) {
-                        compressedFile.delete();
-                    }
-                }
-            });
+        Map<String, RequestBody> formData = new HashMap<>();
+        for (Map.Entry<String, String> entry : reqData.entrySet()) {
+            formData.put(entry.getKey(), RequestBody.create(MediaType.parse("text/plain"), entry.getValue()));
+        }
+
+        Call<ResponseBody> call = endpoint.create(headers, formData, fileParts);
+        call.timeout().timeout(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return parseResponse(call.execute());
+    }
+
+    private static Object parseResponse(Response<ResponseBody> response) throws IOException {
+        if (!response.isSuccessful() || response.body() == null) {
+            String errorBody = response.errorBody() != null ?
+                    response.errorBody().string() : "Unknown error";
+            Log.e(TAG, "Error response: " + errorBody);
+            throw new HttpStatusException(response.code(), "请求失败: " + response.code() + " " + errorBody,
+                    parseRetryAfter(response.headers().get("Retry-After")));
+        }
+
+        String responseStr = response.body().string();
+        Log.d(TAG, "Response: " + responseStr);
+        try {
+            JSONObject jsonResponse = new JSONObject(responseStr);
+            if (!jsonResponse.getBoolean("status")) {
+                String message = jsonResponse.optString("message", "Unknown error");
+                throw new IOException("识别失败: " + message);
+            }
+            return jsonResponse.get("res");
+        } catch (JSONException e) {
+            Log.e(TAG, "Response parsing failed", e);
+            throw new IOException("解析响应失败: " + e.getMessage(), e);
+        }
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Request preparation failed", e);
-            callback.onFailure("请求准备失败: " + e.getMessage());
+    /**
+     * 只支持秒数形式的 Retry-After，日期形式按未提供处理。
+     */
+    private static long parseRetryAfter(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
-    private File compressImage(File imageFile) {
-        // 如果需要压缩图片，可以在这里实现压缩逻辑
-        // 当前直接返回原始文件
-        return imageFile;
+    private static String uploadFileName(String name, String mimeType) {
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return base + ("image/webp".equals(mimeType) ? ".webp" : ".jpg");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+package com.example.vision.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限速。
+ * 令牌按固定速率补充，最多积攒 capacity 个，允许短时突发；pause() 让所有调用方一起暂停，用于服务端要求降速时。
+ */
+class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    TokenBucket(double tokensPerSecond, int capacity) {
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * 取一个令牌，没有时阻塞到补充出来为止。等待在锁外进行，不会挡住其他线程。
+     */
+    void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                if (now - pausedUntilNanos < 0) {
+                    waitNanos = pausedUntilNanos - now;
+                } else if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                } else {
+                    waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    /**
+     * 在接下来的 millis 毫秒内不发放令牌，暂停期间不积攒令牌，恢复后不会立即出现一波突发。
+     */
+    synchronized void pause(long millis) {
+        long now = System.nanoTime();
+        refill(now);
+        long until = now + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+        }
+        tokens = 0;
+    }
+
+    private void refill(long now) {
+        long from = now - pausedUntilNanos < 0 ? now : Math.max(lastRefillNanos, pausedUntilNanos);
+        if (now - from > 0) {
+            tokens = Math.min(capacity, tokens + (now - from) * tokensPerNano);
+        }
+        lastRefillNanos = now;
+    }
+}
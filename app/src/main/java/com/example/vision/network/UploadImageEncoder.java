@@ -0,0 +1,278 @@
+package com.example.vision.network;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 上传识别前的图片编码。
+ * 按识别实际需要的分辨率降采样，没有颜色的页面去掉色度，再在字节预算内选择尽可能高的压缩质量。
+ * 慢速网络下上传量明显减少，而文字笔画的清晰度保持在识别所需的水平。
+ * 每张图片解码一次；缩放、旋转和去色在同一次绘制中完成；编码最多两次：先用最高质量，超出预算时按模型估计的质量重编一次。
+ */
+class UploadImageEncoder {
+    private static final String TAG = "UploadImageEncoder";
+
+    // 判定为彩色的色度阈值：采样点 max(|r-g|, |g-b|, |r-b|) 的均值和超过阈值的比例
+    private static final int SAMPLE_SIZE = 64;
+    private static final float GRAY_MEAN_CHROMA = 6f;
+    private static final float GRAY_COLORED_RATIO = 0.01f;
+    private static final int COLORED_PIXEL_CHROMA = 40;
+
+    private static final int MIN_QUALITY = 50;
+    private static final int MAX_QUALITY = 92;
+    // 近似模型：JPEG 体积约与 libjpeg 量化缩放系数 (200 - 2q)% 的 -SIZE_EXPONENT 次方成正比。
+    // 指数越小，为达到同样的压缩比估计出的质量越低，这里取偏小的值让估计偏保守
+    private static final double SIZE_EXPONENT = 0.75;
+    // 估计质量再减去的余量，抵消模型误差
+    private static final int QUALITY_MARGIN = 2;
+
+    /**
+     * 编码参数：长边上限、字节预算和输出格式。
+     */
+    static class Profile {
+        final int maxEdge;
+        final int byteBudget;
+        final Bitmap.CompressFormat format;
+
+        Profile(int maxEdge, int byteBudget, Bitmap.CompressFormat format) {
+            this.maxEdge = maxEdge;
+            this.byteBudget = byteBudget;
+            this.format = format;
+        }
+    }
+
+    // 公式图片通常是一小块区域，1280px 足够分辨上下标
+    static final Profile LATEX = new Profile(1280, 300 * 1024, Bitmap.CompressFormat.JPEG);
+    // 整页文档需要保留正文小字，长边 2000px 约为 A4 的 240 dpi
+    static final Profile DOCUMENT = new Profile(2000, 800 * 1024, Bitmap.CompressFormat.JPEG);
+
+    /**
+     * 编码结果。
+     */
+    static class Encoded {
+        final byte[] data;
+        final String mimeType;
+        final int width;
+        final int height;
+        final int quality;
+        final boolean grayscale;
+
+        Encoded(byte[] data, String mimeType, int width, int height, int quality, boolean grayscale) {
+            this.data = data;
+            this.mimeType = mimeType;
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+            this.grayscale = grayscale;
+        }
+    }
+
+    @NonNull
+    static Encoded encode(@NonNull File imageFile, @NonNull Profile profile) throws IOException {
+        long startTime = SystemClock.elapsedRealtime();
+        Bitmap decoded = decodeSampled(imageFile, profile.maxEdge);
+        boolean grayscale;
+        Bitmap bitmap;
+        try {
+            grayscale = isGrayscale(decoded);
+            bitmap = transform(decoded, profile.maxEdge, readRotation(imageFile.getAbsolutePath()), grayscale);
+        } catch (RuntimeException e) {
+            decoded.recycle();
+            throw e;
+        }
+        if (bitmap != decoded) {
+            decoded.recycle();
+        }
+        try {
+            // 多数图片在最高质量下就不超出预算，只编码一次
+            ByteArrayOutputStream out = new ByteArrayOutputStream(profile.byteBudget);
+            byte[] best = compress(bitmap, profile.format, MAX_QUALITY, out);
+            int bestQuality = MAX_QUALITY;
+            if (best.length > profile.byteBudget) {
+                // 按模型估计的质量重编一次。预算只是目标值，最低质量仍超出时也接受，不再继续降低清晰度
+                bestQuality = estimateQuality(best.length, profile.byteBudget);
+                best = compress(bitmap, profile.format, bestQuality, out);
+            }
+
+            Log.d(TAG, String.format("Encoded %s: %d KB -> %d KB, %dx%d, q=%d, gray=%b in %d ms",
+                    imageFile.getName(), imageFile.length() / 1024, best.length / 1024,
+                    bitmap.getWidth(), bitmap.getHeight(), bestQuality, grayscale,
+                    SystemClock.elapsedRealtime() - startTime));
+            return new Encoded(best, mimeType(profile.format), bitmap.getWidth(), bitmap.getHeight(),
+                    bestQuality, grayscale);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * 由最高质量下的体积估计满足预算的质量。
+     * libjpeg 在 q >= 50 时按 (200 - 2q)% 缩放量化表，体积按 SIZE_EXPONENT 的幂律随缩放系数变化。
+     */
+    static int estimateQuality(int maxQualityBytes, int byteBudget) {
+        double maxQualityScale = 200 - 2 * MAX_QUALITY;
+        double scale = maxQualityScale * Math.pow((double) maxQualityBytes / byteBudget, 1 / SIZE_EXPONENT);
+        int quality = (int) Math.floor((200 - scale) / 2) - QUALITY_MARGIN;
+        return Math.max(MIN_QUALITY, Math.min(MAX_QUALITY - 1, quality));
+    }
+
+    /**
+     * 用 inSampleSize 以 2 的幂降采样解码，采样后长边仍不低于上限。
+     */
+    private static Bitmap decodeSampled(File imageFile, int maxEdge) throws IOException {
+        String path = imageFile.getAbsolutePath();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Cannot decode image: " + imageFile.getName());
+        }
+
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sampleSize * 2) >= maxEdge) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // 不需要缩放和旋转时直接在解码结果上去色
+        options.inMutable = true;
+        Bitmap decoded = BitmapFactory.decodeFile(path, options);
+        if (decoded == null) {
+            throw new IOException("Cannot decode image: " + imageFile.getName());
+        }
+        return decoded;
+    }
+
+    /**
+     * 精确缩放到长边上限、按 EXIF 方向旋转并按需去色，只绘制一次。
+     * 不需要缩放和旋转时逐行原地去色，不产生整幅副本。返回的位图可能就是 decoded。
+     */
+    private static Bitmap transform(Bitmap decoded, int maxEdge, int rotation, boolean grayscale) {
+        float scale = Math.min(1f, (float) maxEdge / Math.max(decoded.getWidth(), decoded.getHeight()));
+        if (scale == 1f && rotation == 0) {
+            if (grayscale) {
+                desaturateInPlace(decoded);
+            }
+            return decoded;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        RectF bounds = new RectF(0, 0, decoded.getWidth(), decoded.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+
+        Bitmap transformed = Bitmap.createBitmap(Math.max(1, Math.round(bounds.width())),
+                Math.max(1, Math.round(bounds.height())), Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        if (grayscale) {
+            // Bitmap 的 JPEG 编码器总是输出三通道，但色度分量为常数时几乎不占体积
+            ColorMatrix colorMatrix = new ColorMatrix();
+            colorMatrix.setSaturation(0);
+            paint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));
+        }
+        new Canvas(transformed).drawBitmap(decoded, matrix, paint);
+        return transformed;
+    }
+
+    private static int readRotation(String path) {
+        try {
+            int orientation = new ExifInterface(path).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90: return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180: return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270: return 270;
+                default: return 0;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 在缩小的副本上统计色度，扫描件和白底黑字的页面判定为灰度。
+     */
+    private static boolean isGrayscale(Bitmap bitmap) {
+        Bitmap sample = Bitmap.createScaledBitmap(bitmap, SAMPLE_SIZE, SAMPLE_SIZE, true);
+        int[] pixels = new int[SAMPLE_SIZE * SAMPLE_SIZE];
+        sample.getPixels(pixels, 0, SAMPLE_SIZE, 0, 0, SAMPLE_SIZE, SAMPLE_SIZE);
+        if (sample != bitmap) {
+            sample.recycle();
+        }
+
+        long chromaSum = 0;
+        int colored = 0;
+        for (int pixel : pixels) {
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            int chroma = Math.max(Math.abs(r - g), Math.max(Math.abs(g - b), Math.abs(r - b)));
+            chromaSum += chroma;
+            if (chroma > COLORED_PIXEL_CHROMA) colored++;
+        }
+        float meanChroma = (float) chromaSum / pixels.length;
+        return meanChroma < GRAY_MEAN_CHROMA && colored < pixels.length * GRAY_COLORED_RATIO;
+    }
+
+    /**
+     * 逐行原地去掉色度，亮度权重与 ColorMatrix.setSaturation(0) 相同。
+     */
+    private static void desaturateInPlace(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                // 0.213 / 0.715 / 0.072 的 8 位定点近似
+                int luma = (r * 55 + g * 183 + b * 18) >> 8;
+                row[x] = (pixel & 0xFF000000) | (luma << 16) | (luma << 8) | luma;
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+    }
+
+    private static byte[] compress(Bitmap bitmap, Bitmap.CompressFormat format, int quality,
+                                   ByteArrayOutputStream out) throws IOException {
+        out.reset();
+        if (!bitmap.compress(format, quality, out)) {
+            throw new IOException("Failed to encode upload image");
+        }
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String mimeType(Bitmap.CompressFormat format) {
+        if (format == Bitmap.CompressFormat.JPEG) {
+            return "image/jpeg";
+        }
+        if (format == Bitmap.CompressFormat.PNG) {
+            return "image/png";
+        }
+        if (format == Bitmap.CompressFormat.WEBP
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                && (format == Bitmap.CompressFormat.WEBP_LOSSY || format == Bitmap.CompressFormat.WEBP_LOSSLESS))) {
+            return "image/webp";
+        }
+        return "image/*";
+    }
+}
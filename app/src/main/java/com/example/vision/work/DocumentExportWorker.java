@@ -0,0 +1,223 @@
+package com.example.vision.work;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.example.vision.DocumentExporter;
+import com.example.vision.DocumentPhotoManager;
+import com.example.vision.network.OcrScheduler;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * 执行 PDF（可带文字层）、图片（JPEG / PNG / WebP）或压缩包（ZIP / CBZ）导出任务，导出路径写入任务记录的 output。
+ */
+public class DocumentExportWorker extends Worker {
+    private static final String TAG = "DocumentExportWorker";
+
+    // 正在执行 doWork 的线程。Worker 被停止时 WorkManager 不会中断它，这里自行中断，让阻塞中的等待尽快返回
+    private Thread workThread;
+
+    public DocumentExportWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @Override
+    public void onStopped() {
+        synchronized (this) {
+            if (workThread != null) {
+                workThread.interrupt();
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String jobId = getInputData().getString(JobQueue.KEY_JOB_ID);
+        JobStore store = JobStore.getInstance(getApplicationContext());
+        JobStore.JobRecord record = jobId != null ? store.get(jobId) : null;
+        if (record == null) {
+            Log.e(TAG, "Job record missing: " + jobId);
+            return Result.failure();
+        }
+        if (record.isFinished()) {
+            return Result.success();
+        }
+
+        synchronized (this) {
+            workThread = Thread.currentThread();
+        }
+        try {
+            record.state = JobStore.STATE_RUNNING;
+            store.save(record);
+
+            ArrayList<DocumentPhotoManager.PhotoItem> photoItems = new ArrayList<>();
+            for (JobStore.JobItem item : record.items) {
+                if (isStopped()) {
+                    throw new InterruptedIOException("Export job stopped");
+                }
+                File sourceFile = new File(item.sourcePath);
+                if (!sourceFile.exists() || !sourceFile.canRead()) {
+                    throw new IOException("Source file not accessible: " + item.sourcePath);
+                }
+                photoItems.add(new DocumentPhotoManager.PhotoItem(item.sourcePath, null, System.currentTimeMillis()));
+            }
+
+            String output;
+            switch (record.type) {
+                case JobStore.TYPE_EXPORT_PDF:
+                    output = DocumentExporter.exportToPdf(getApplicationContext(), photoItems);
+                    checkOutputFile(output);
+                    break;
+                case JobStore.TYPE_EXPORT_SEARCHABLE_PDF:
+                    Map<String, Future<String>> pendingText = submitMissingText(record.items);
+                    try {
+                        output = DocumentExporter.exportToSearchablePdf(getApplicationContext(), photoItems,
+                                page -> getPageText(page, pendingText));
+                    } finally {
+                        for (Future<String> future : pendingText.values()) {
+                            future.cancel(true);
+                        }
+                    }
+                    checkOutputFile(output);
+                    break;
+                case JobStore.TYPE_EXPORT_ZIP:
+                    output = DocumentExporter.exportToArchive(getApplicationContext(), photoItems,
+                            DocumentExporter.FORMAT_ZIP);
+                    checkOutputFile(output);
+                    break;
+                case JobStore.TYPE_EXPORT_CBZ:
+                    output = DocumentExporter.exportToArchive(getApplicationContext(), photoItems,
+                            DocumentExporter.FORMAT_CBZ);
+                    checkOutputFile(output);
+                    break;
+                default:
+                    output = DocumentExporter.exportImages(getApplicationContext(), photoItems,
+                            imageFormat(record.type));
+                    String outputDir = output.split(":")[0];
+                    if (!new File(outputDir).exists()) {
+                        throw new IOException("Output directory not accessible: " + outputDir);
+                    }
+                    break;
+            }
+
+            for (JobStore.JobItem item : record.items) {
+                item.done = true;
+            }
+            record.output = output;
+            record.state = JobStore.STATE_SUCCEEDED;
+            store.save(record);
+            return Result.success();
+        } catch (InterruptedIOException e) {
+            // 超时同样是 InterruptedIOException，只有被停止或线程中断才重试
+            if (isStopped() || e.getCause() instanceof InterruptedException) {
+                return retryLater(store, record);
+            }
+            return fail(store, record, e);
+        } catch (Exception e) {
+            // 停止时中断线程可能以其他 IO 错误的形式出现，例如 ClosedByInterruptException
+            if (isStopped()) {
+                return retryLater(store, record);
+            }
+            return fail(store, record, e);
+        } finally {
+            synchronized (this) {
+                workThread = null;
+            }
+        }
+    }
+
+    /**
+     * 任务被系统停止或取消，不记为失败。导出没有断点，重新运行时从头开始。
+     */
+    private Result retryLater(JobStore store, JobStore.JobRecord record) {
+        Log.w(TAG, "Export job " + record.id + " stopped, will retry");
+        Thread.currentThread().interrupt();
+        record.state = JobStore.STATE_QUEUED;
+        try {
+            store.save(record);
+        } catch (IOException saveError) {
+            Log.e(TAG, "Failed to persist state for job " + record.id, saveError);
+        }
+        return Result.retry();
+    }
+
+    private Result fail(JobStore store, JobStore.JobRecord record, Exception e) {
+        Log.e(TAG, "Export job " + record.id + " failed", e);
+        record.state = JobStore.STATE_FAILED;
+        record.error = e.getMessage();
+        try {
+            store.save(record);
+        } catch (IOException saveError) {
+            Log.e(TAG, "Failed to persist failure for job " + record.id, saveError);
+        }
+        return Result.failure();
+    }
+
+    /**
+     * 导出开始前把所有页一次性交给 OcrScheduler.submitBatch：已识别过的页直接取缓存结果，其余的在调度器的并发和限速范围内识别，
+     * 不受 PDF 写入窗口的限制。返回以页面路径为键的结果。
+     */
+    private Map<String, Future<String>> submitMissingText(List<JobStore.JobItem> items) {
+        // 同一张图片可能出现在多页，只识别一次
+        Map<String, File> unique = new LinkedHashMap<>();
+        for (JobStore.JobItem item : items) {
+            File page = new File(item.sourcePath);
+            unique.put(page.getAbsolutePath(), page);
+        }
+        List<File> pages = new ArrayList<>(unique.values());
+        Map<String, Future<String>> pending = new HashMap<>();
+
+        List<Future<String>> futures = OcrScheduler.getInstance(getApplicationContext())
+                .submitBatch(pages, OcrScheduler.TYPE_DOCUMENT, OcrScheduler.PRIORITY_BATCH);
+        int submitted = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            pending.put(pages.get(i).getAbsolutePath(), futures.get(i));
+            if (!futures.get(i).isDone()) {
+                submitted++;
+            }
+        }
+        Log.d(TAG, "Submitted " + submitted + " of " + items.size() + " pages for recognition");
+        return pending;
+    }
+
+    /**
+     * 等待该页的识别结果，识别结果由 OcrScheduler 缓存，下次导出不会再请求。
+     */
+    @Nullable
+    private String getPageText(@NonNull File page, @NonNull Map<String, Future<String>> pendingText)
+            throws IOException, InterruptedException {
+        if (isStopped()) {
+            throw new InterruptedException("Export job stopped");
+        }
+        Future<String> future = pendingText.get(page.getAbsolutePath());
+        if (future == null) {
+            return OcrScheduler.getInstance(getApplicationContext()).recognize(
+                    page, OcrScheduler.TYPE_DOCUMENT, OcrScheduler.PRIORITY_BATCH);
+        }
+        return OcrScheduler.await(future);
+    }
+
+    private static void checkOutputFile(String output) throws IOException {
+        if (!new File(output).canRead()) {
+            throw new IOException("Output file not accessible: " + output);
+        }
+    }
+
+    private static String imageFormat(String type) {
+        if (JobStore.TYPE_EXPORT_JPEG.equals(type)) return DocumentExporter.FORMAT_JPEG;
+        if (JobStore.TYPE_EXPORT_WEBP.equals(type)) return DocumentExporter.FORMAT_WEBP;
+        return DocumentExporter.FORMAT_PNG;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.vision.work;
+
+import android.content.Context;
+import android.graphics.PointF;
+import android.net.Uri;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.example.vision.DocumentBatchProcessor;
+import com.example.vision.DocumentHistoryManager;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 执行批量校正和单页裁剪任务。
+ * 每完成一页就写回任务记录，任务被中断后重新运行时跳过已完成的页面。
+ */
+public class DocumentProcessWorker extends Worker {
+    private static final String TAG = "DocumentProcessWorker";
+
+    // 正在执行 doWork 的线程。Worker 被停止时 WorkManager 不会中断它，这里自行中断，让阻塞中的等待尽快返回
+    private Thread workThread;
+
+    public DocumentProcessWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @Override
+    public void onStopped() {
+        synchronized (this) {
+            if (workThread != null) {
+                workThread.interrupt();
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String jobId = getInputData().getString(JobQueue.KEY_JOB_ID);
+        JobStore store = JobStore.getInstance(getApplicationContext());
+        JobStore.JobRecord record = jobId != null ? store.get(jobId) : null;
+        if (record == null) {
+            Log.e(TAG, "Job record missing: " + jobId);
+            return Result.failure();
+        }
+        if (record.isFinished()) {
+            return Result.success();
+        }
+
+        synchronized (this) {
+            workThread = Thread.currentThread();
+        }
+        try {
+            record.state = JobStore.STATE_RUNNING;
+            store.save(record);
+            copyPendingSources(store, record);
+
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < record.items.size(); i++) {
+                if (!record.items.get(i).done) {
+                    pending.add(i);
+                }
+            }
+            Log.d(TAG, "Job " + jobId + ": " + pending.size() + "/" + record.items.size() + " pages pending");
+
+            List<String> paths = new ArrayList<>();
+            List<PointF[]> cornersList = new ArrayList<>();
+            for (int index : pending) {
+                JobStore.JobItem item = record.items.get(index);
+                paths.add(item.sourcePath);
+                cornersList.add(toPoints(item.corners));
+            }
+
+            if (isStopped()) {
+                throw new InterruptedException("Job stopped");
+            }
+            boolean addHistory = JobStore.TYPE_PROCESS.equals(record.type);
+            new DocumentBatchProcessor(getApplicationContext()).process(paths, cornersList,
+                    (result, completed, total) -> {
+                        JobStore.JobItem item = record.items.get(pending.get(result.index));
+                        if (result.isSuccess()) {
+                            item.processedPath = result.result.processedPath;
+                            item.thumbnailPath = result.result.thumbnailPath;
+                            if (addHistory) {
+                                DocumentHistoryManager.addHistory(getApplicationContext(),
+                                        new DocumentHistoryManager.HistoryItem(
+                                                item.sourcePath,
+                                                item.processedPath,
+                                                item.thumbnailPath,
+                                                System.currentTimeMillis()));
+                            }
+                        } else if (isStopped()) {
+                            // 停止时被取消的页面不算失败，留到下次运行
+                            return;
+                        } else {
+                            item.error = result.error != null ? result.error.getMessage() : "处理失败";
+                        }
+                        item.done = true;
+                        try {
+                            store.save(record);
+                        } catch (IOException e) {
+                            Log.e(TAG, "Failed to persist progress for job " + jobId, e);
+                        }
+                    });
+
+            if (isStopped()) {
+                // 停止时正在处理的页面被取消，没有标记完成
+                throw new InterruptedException("Job stopped");
+            }
+            record.state = JobStore.STATE_SUCCEEDED;
+            store.save(record);
+            return Result.success();
+        } catch (InterruptedException e) {
+            // 被系统停止，已完成的页面已经落盘，下次运行时继续
+            Log.w(TAG, "Job " + jobId + " interrupted, will resume");
+            Thread.currentThread().interrupt();
+            record.state = JobStore.STATE_QUEUED;
+            try {
+                store.save(record);
+            } catch (IOException saveError) {
+                Log.e(TAG, "Failed to persist state for job " + jobId, saveError);
+            }
+            return Result.retry();
+        } catch (Exception e) {
+            Log.e(TAG, "Job " + jobId + " failed", e);
+            record.state = JobStore.STATE_FAILED;
+            record.error = e.getMessage();
+            try {
+                store.save(record);
+            } catch (IOException saveError) {
+                Log.e(TAG, "Failed to persist failure for job " + jobId, saveError);
+            }
+            return Result.failure();
+        } finally {
+            synchronized (this) {
+                workThread = null;
+            }
+        }
+    }
+
+    /**
+     * 把裁剪任务的源图从 URI 复制到 sourcePath，完成后清空 sourceUri，任务重新运行时不再复制。
+     * 先写临时文件再改名，中途失败不会留下不完整的图片。
+     */
+    private void copyPendingSources(JobStore store, JobStore.JobRecord record) throws IOException {
+        for (JobStore.JobItem item : record.items) {
+            if (item.done || item.sourceUri == null) {
+                continue;
+            }
+            File target = new File(item.sourcePath);
+            File tempFile = new File(target.getPath() + ".tmp");
+            try (InputStream is = getApplicationContext().getContentResolver()
+                    .openInputStream(Uri.parse(item.sourceUri))) {
+                if (is == null) throw new IOException("无法打开输入流");
+                try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                    byte[] buffer = new byte[8192];
+                    int bytesRead;
+                    while ((bytesRead = is.read(buffer)) != -1) {
+                        fos.write(buffer, 0, bytesRead);
+                    }
+                }
+            } catch (IOException | SecurityException e) {
+                tempFile.delete();
+                throw new IOException("无法读取源图: " + e.getMessage(), e);
+            }
+            if (!tempFile.renameTo(target)) {
+                tempFile.delete();
+                throw new IOException("无法保存裁剪图片: " + target.getName());
+            }
+            Log.d(TAG, "裁剪后图片已保存: " + target.getAbsolutePath());
+            item.sourceUri = null;
+            store.save(record);
+        }
+    }
+
+    private static PointF[] toPoints(float[] corners) {
+        if (corners == null) {
+            return null;
+        }
+        PointF[] points = new PointF[corners.length / 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new PointF(corners[i * 2], corners[i * 2 + 1]);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.vision.work;
+
+import android.content.Context;
+import android.graphics.PointF;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ListenableWorker;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.WorkManager;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 后台任务入口。
+ * 任务输入先写入 JobStore，再交给 WorkManager 调度，进程被杀后由 WorkManager 重新拉起并从记录继续。
+ * 两条通道：
+ * - 交互任务（裁剪、识别）各自独立运行，Android 12 起以加急任务提交；
+ * - 批量任务（批量校正、导出）在同一条唯一任务链上依次执行，不会占满 WorkManager 的线程，交互任务总有空位。
+ */
+public final class JobQueue {
+    private static final String TAG = "JobQueue";
+    private static final String BATCH_CHAIN = "document_batch_jobs";
+
+    static final String KEY_JOB_ID = "job_id";
+
+    private JobQueue() {
+    }
+
+    /**
+     * 批量校正，每页以整幅图作为裁剪区域。
+     */
+    @NonNull
+    public static String enqueueProcessing(@NonNull Context context, @NonNull List<String> sourcePaths) throws IOException {
+        List<JobStore.JobItem> items = new ArrayList<>();
+        for (String path : sourcePaths) {
+            items.add(new JobStore.JobItem(path));
+        }
+        JobStore.JobRecord record = JobStore.getInstance(context).create(JobStore.TYPE_PROCESS, items);
+        enqueueBatch(context, DocumentProcessWorker.class, record.id);
+        return record.id;
+    }
+
+    /**
+     * 单页裁剪校正。任务记录保存源图 URI 和它在 files/cropped 下的目标路径，由 DocumentProcessWorker 先复制再处理。
+     * 入队只写一条任务记录，调用方立即拿到任务 id，Activity 重建后凭 id 重新观察。
+     * content:// 的读取授权只在调用方存活期间有效；交互任务会立即运行，调用方在结果返回前保持打开，
+     * 授权已失效时复制失败，任务以失败结束。
+     */
+    @NonNull
+    public static String enqueueCrop(@NonNull Context context, @NonNull Uri sourceUri, @NonNull PointF[] corners) throws IOException {
+        File croppedDir = new File(context.getFilesDir(), "cropped");
+        if (!croppedDir.exists() && !croppedDir.mkdirs()) {
+            throw new IOException("无法创建裁剪图片目录");
+        }
+        File croppedFile = new File(croppedDir, "CROP_" + System.currentTimeMillis() + ".jpg");
+        JobStore.JobItem item = new JobStore.JobItem(croppedFile.getAbsolutePath());
+        item.sourceUri = sourceUri.toString();
+        item.corners = new float[corners.length * 2];
+        for (int i = 0; i < corners.length; i++) {
+            item.corners[i * 2] = corners[i].x;
+            item.corners[i * 2 + 1] = corners[i].y;
+        }
+        List<JobStore.JobItem> items = new ArrayList<>();
+        items.add(item);
+        JobStore.JobRecord record = JobStore.getInstance(context).create(JobStore.TYPE_CROP, items);
+        enqueueInteractive(context, DocumentProcessWorker.class, record.id);
+        return record.id;
+    }
+
+    /**
+     * 导出 PDF、图片或压缩包，type 为 JobStore 中的 TYPE_EXPORT_* 之一。
+     */
+    @NonNull
+    public static String enqueueExport(@NonNull Context context, @NonNull String type,
+                                       @NonNull List<String> sourcePaths) throws IOException {
+        List<JobStore.JobItem> items = new ArrayList<>();
+        for (String path : sourcePaths) {
+            items.add(new JobStore.JobItem(path));
+        }
+        JobStore.JobRecord record = JobStore.getInstance(context).create(type, items);
+        enqueueBatch(context, DocumentExportWorker.class, record.id);
+        return record.id;
+    }
+
+    /**
+     * 公式或文档识别，type 为 JobStore.TYPE_OCR_LATEX 或 TYPE_OCR_DOC。
+     */
+    @NonNull
+    public static String enqueueOcr(@NonNull Context context, @NonNull String type,
+                                    @NonNull File imageFile) throws IOException {
+        List<JobStore.JobItem> items = new ArrayList<>();
+        items.add(new JobStore.JobItem(imageFile.getAbsolutePath()));
+        JobStore.JobRecord record = JobStore.getInstance(context).create(type, items);
+        enqueueInteractive(context, OcrWorker.class, record.id);
+        return record.id;
+    }
+
+    private static void enqueueInteractive(Context context, Class<? extends ListenableWorker> workerClass,
+                                           String jobId) {
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(workerClass)
+                .setInputData(new Data.Builder().putString(KEY_JOB_ID, jobId).build())
+                .addTag(jobId);
+        // Android 12 以下加急任务需要前台通知，这里只在 12 及以上使用
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            builder.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST);
+        }
+        WorkManager.getInstance(context).enqueue(builder.build());
+        Log.d(TAG, "Enqueued interactive job " + jobId + " (" + workerClass.getSimpleName() + ")");
+    }
+
+    private static void enqueueBatch(Context context, Class<? extends ListenableWorker> workerClass,
+                                     String jobId) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(workerClass)
+                .setInputData(new Data.Builder().putString(KEY_JOB_ID, jobId).build())
+                .addTag(jobId)
+                .build();
+        // 前一个任务失败时替换整条链，避免后续任务被连带取消
+        WorkManager.getInstance(context)
+                .beginUniqueWork(BATCH_CHAIN, ExistingWorkPolicy.APPEND_OR_REPLACE, request)
+                .enqueue();
+        Log.d(TAG, "Enqueued batch job " + jobId + " (" + workerClass.getSimpleName() + ")");
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.vision.work;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 后台任务的持久化记录。
+ * 每个任务的输入和逐项结果保存在 files/jobs/<id>.json，进程重启后任务可以从中断处继续；
+ * 界面通过 observe() 获得的 LiveData 接收进度和结果，不持有任何 Activity 引用。
+ */
+public class JobStore {
+    private static final String TAG = "JobStore";
+    private static final String JOBS_DIR = "jobs";
+
+    public static final String TYPE_PROCESS = "process";
+    public static final String TYPE_CROP = "crop";
+    public static final String TYPE_EXPORT_PDF = "export_pdf";
+    public static final String TYPE_EXPORT_SEARCHABLE_PDF = "export_searchable_pdf";
+    public static final String TYPE_EXPORT_PNG = "export_png";
+    public static final String TYPE_EXPORT_JPEG = "export_jpeg";
+    public static final String TYPE_EXPORT_WEBP = "export_webp";
+    public static final String TYPE_EXPORT_ZIP = "export_zip";
+    public static final String TYPE_EXPORT_CBZ = "export_cbz";
+    public static final String TYPE_OCR_LATEX = "ocr_latex";
+    public static final String TYPE_OCR_DOC = "ocr_doc";
+
+    public static final String STATE_QUEUED = "queued";
+    public static final String STATE_RUNNING = "running";
+    public static final String STATE_SUCCEEDED = "succeeded";
+    public static final String STATE_FAILED = "failed";
+
+    private static volatile JobStore instance;
+
+    private final File jobsDir;
+    private final Map<String, JobRecord> records = new HashMap<>();
+    private final Map<String, MutableLiveData<JobRecord>> observers = new HashMap<>();
+
+    public static class JobItem {
+        public String sourcePath;
+        // 尚未复制到 sourcePath 的源图 URI，复制完成后清空
+        @Nullable public String sourceUri;
+        @Nullable public float[] corners;    // 左上、左下、右下、右上，为空表示整幅图
+        @Nullable public String processedPath;
+        @Nullable public String thumbnailPath;
+        @Nullable public String error;
+        public boolean done;
+
+        public JobItem(String sourcePath) {
+            this.sourcePath = sourcePath;
+        }
+
+        JobItem copy() {
+            JobItem item = new JobItem(sourcePath);
+            item.sourceUri = sourceUri;
+            item.corners = corners != null ? corners.clone() : null;
+            item.processedPath = processedPath;
+            item.thumbnailPath = thumbnailPath;
+            item.error = error;
+            item.done = done;
+            return item;
+        }
+
+        JSONObject toJson() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put("sourcePath", sourcePath);
+            json.putOpt("sourceUri", sourceUri);
+            if (corners != null) {
+                JSONArray array = new JSONArray();
+                for (float value : corners) {
+                    array.put((double) value);
+                }
+                json.put("corners", array);
+            }
+            json.putOpt("processedPath", processedPath);
+            json.putOpt("thumbnailPath", thumbnailPath);
+            json.putOpt("error", error);
+            json.put("done", done);
+            return json;
+        }
+
+        static JobItem fromJson(JSONObject json) throws Exception {
+            JobItem item = new JobItem(json.optString("sourcePath", null));
+            item.sourceUri = json.optString("sourceUri", null);
+            JSONArray array = json.optJSONArray("corners");
+            if (array != null) {
+                item.corners = new float[array.length()];
+                for (int i = 0; i < array.length(); i++) {
+                    item.corners[i] = (float) array.getDouble(i);
+                }
+            }
+            item.processedPath = json.optString("processedPath", null);
+            item.thumbnailPath = json.optString("thumbnailPath", null);
+            item.error = json.optString("error", null);
+            item.done = json.optBoolean("done", false);
+            return item;
+        }
+    }
+
+    public static class JobRecord {
+        public final String id;
+        public final String type;
+        public final List<JobItem> items;
+        public String state = STATE_QUEUED;
+        @Nullable public String output;
+        @Nullable public String error;
+
+        JobRecord(String id, String type, List<JobItem> items) {
+            this.id = id;
+            this.type = type;
+            this.items = items;
+        }
+
+        public boolean isFinished() {
+            return STATE_SUCCEEDED.equals(state) || STATE_FAILED.equals(state);
+        }
+
+        public int getCompletedCount() {
+            int count = 0;
+            for (JobItem item : items) {
+                if (item.done) count++;
+            }
+            return count;
+        }
+
+        JobRecord copy() {
+            List<JobItem> itemsCopy = new ArrayList<>();
+            for (JobItem item : items) {
+                itemsCopy.add(item.copy());
+            }
+            JobRecord record = new JobRecord(id, type, itemsCopy);
+            record.state = state;
+            record.output = output;
+            record.error = error;
+            return record;
+        }
+
+        JSONObject toJson() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("type", type);
+            json.put("state", state);
+            json.putOpt("output", output);
+            json.putOpt("error", error);
+            JSONArray array = new JSONArray();
+            for (JobItem item : items) {
+                array.put(item.toJson());
+            }
+            json.put("items", array);
+            return json;
+        }
+
+        static JobRecord fromJson(JSONObject json) throws Exception {
+            List<JobItem> items = new ArrayList<>();
+            JSONArray array = json.getJSONArray("items");
+            for (int i = 0; i < array.length(); i++) {
+                items.add(JobItem.fromJson(array.getJSONObject(i)));
+            }
+            JobRecord record = new JobRecord(json.getString("id"), json.getString("type"), items);
+            record.state = json.getString("state");
+            record.output = json.optString("output", null);
+            record.error = json.optString("error", null);
+            return record;
+        }
+    }
+
+    private JobStore(Context context) {
+        jobsDir = new File(context.getFilesDir(), JOBS_DIR);
+        if (!jobsDir.exists() && !jobsDir.mkdirs()) {
+            Log.e(TAG, "Cannot create jobs directory: " + jobsDir.getPath());
+        }
+    }
+
+    public static JobStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (JobStore.class) {
+                if (instance == null) {
+                    instance = new JobStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    @NonNull
+    public synchronized JobRecord create(@NonNull String type, @NonNull List<JobItem> items) throws IOException {
+        JobRecord record = new JobRecord(UUID.randomUUID().toString(), type, items);
+        save(record);
+        return record.copy();
+    }
+
+    /**
+     * 返回任务记录的副本，修改后需调用 save() 才会持久化并通知观察者。
+     */
+    @Nullable
+    public synchronized JobRecord get(@NonNull String id) {
+        JobRecord record = load(id);
+        return record != null ? record.copy() : null;
+    }
+
+    public synchronized void save(@NonNull JobRecord record) throws IOException {
+        JobRecord snapshot = record.copy();
+        writeAtomically(snapshot);
+        records.put(snapshot.id, snapshot);
+        MutableLiveData<JobRecord> liveData = observers.get(snapshot.id);
+        if (liveData != null) {
+            liveData.postValue(snapshot.copy());
+        }
+    }
+
+    @NonNull
+    public synchronized LiveData<JobRecord> observe(@NonNull String id) {
+        MutableLiveData<JobRecord> liveData = observers.get(id);
+        if (liveData == null) {
+            liveData = new MutableLiveData<>();
+            observers.put(id, liveData);
+            JobRecord record = load(id);
+            if (record != null) {
+                liveData.postValue(record.copy());
+            }
+        }
+        return liveData;
+    }
+
+    /**
+     * 界面取走结果后删除记录，避免重复应用。
+     */
+    public synchronized void remove(@NonNull String id) {
+        records.remove(id);
+        observers.remove(id);
+        File file = new File(jobsDir, id + ".json");
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete job record: " + file.getPath());
+        }
+    }
+
+    @Nullable
+    private JobRecord load(String id) {
+        JobRecord record = records.get(id);
+        if (record != null) {
+            return record;
+        }
+
+        File file = new File(jobsDir, id + ".json");
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) break;
+                offset += read;
+            }
+            record = JobRecord.fromJson(new JSONObject(new String(data, 0, offset, StandardCharsets.UTF_8)));
+            records.put(id, record);
+            return record;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load job record: " + id, e);
+            return null;
+        }
+    }
+
+    // 先写临时文件再重命名，进程在写入途中被杀也不会留下损坏的记录
+    private void writeAtomically(JobRecord record) throws IOException {
+        File file = new File(jobsDir, record.id + ".json");
+        File tempFile = new File(jobsDir, record.id + ".json.tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(record.toJson().toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to serialize job record", e);
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Failed to commit job record: " + file.getPath());
+        }
+    }
+}
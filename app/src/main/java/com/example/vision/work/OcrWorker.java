@@ -0,0 +1,82 @@
+package com.example.vision.work;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.example.vision.network.OcrScheduler;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 执行公式 / 文档识别任务，识别文本写入任务记录的 output。
+ */
+public class OcrWorker extends Worker {
+    private static final String TAG = "OcrWorker";
+
+    public OcrWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String jobId = getInputData().getString(JobQueue.KEY_JOB_ID);
+        JobStore store = JobStore.getInstance(getApplicationContext());
+        JobStore.JobRecord record = jobId != null ? store.get(jobId) : null;
+        if (record == null || record.items.isEmpty()) {
+            Log.e(TAG, "Job record missing: " + jobId);
+            return Result.failure();
+        }
+        if (record.isFinished()) {
+            return Result.success();
+        }
+
+        try {
+            record.state = JobStore.STATE_RUNNING;
+            store.save(record);
+
+            File imageFile = new File(record.items.get(0).sourcePath);
+            if (!imageFile.exists()) {
+                throw new IOException("图片不存在: " + imageFile.getPath());
+            }
+
+            // 识别结果由 OcrScheduler 按图片内容缓存，导出可搜索 PDF 时不再重复识别
+            String text = recognize(getApplicationContext(), record.type, imageFile);
+
+            record.items.get(0).done = true;
+            record.output = text;
+            record.state = JobStore.STATE_SUCCEEDED;
+            store.save(record);
+            return Result.success();
+        } catch (InterruptedException e) {
+            Log.w(TAG, "OCR job " + jobId + " interrupted, will retry");
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        } catch (Exception e) {
+            Log.e(TAG, "OCR job " + jobId + " failed", e);
+            record.state = JobStore.STATE_FAILED;
+            record.error = e.getMessage();
+            try {
+                store.save(record);
+            } catch (IOException saveError) {
+                Log.e(TAG, "Failed to persist failure for job " + jobId, saveError);
+            }
+            return Result.failure();
+        }
+    }
+
+    /**
+     * 同步识别用户当前查看的图片，type 为 JobStore.TYPE_OCR_LATEX 或 TYPE_OCR_DOC。
+     * 请求经由 OcrScheduler 以最高优先级发出，在后台线程上调用。
+     */
+    @NonNull
+    static String recognize(@NonNull Context context, @NonNull String type,
+                            @NonNull File imageFile) throws IOException, InterruptedException {
+        String ocrType = JobStore.TYPE_OCR_LATEX.equals(type)
+                ? OcrScheduler.TYPE_LATEX : OcrScheduler.TYPE_DOCUMENT;
+        return OcrScheduler.getInstance(context)
+                .recognize(imageFile, ocrType, OcrScheduler.PRIORITY_VISIBLE);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.vision.network;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 签名开销的 JMH 基准，对比原来的实现（每次新建排序列表、Random 和 MessageDigest，String.format 逐字节编码）。
+ * 不是 JUnit 测试，需要手动运行 main()，分配量用 -prof gc 查看：
+ * 在 IDE 中运行，或 ./gradlew :app:compileDebugUnitTestJavaWithJavac 后以测试类路径执行本类。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthHelperBenchmark {
+    private static final String APP_ID = "ilVieOcIosU2amiW01Edxzmv";
+    private static final String SECRET = "benchmark-secret";
+    private static final String CHARS = "AaBbCcDdEeFfGgHhIiJjKkLlMmNnOoPpQqRrSsTtUuVvWwXxYyZz0123456789";
+
+    private final Map<String, String> latexData = new HashMap<>();
+    private final Map<String, String> docData = new HashMap<>();
+
+    public AuthHelperBenchmark() {
+        latexData.put("use_batch", "false");
+        docData.put("inline_formula_wrapper", "[\"$\",\"$\"]");
+        docData.put("isolated_formula_wrapper", "[\"$$\",\"$$\"]");
+    }
+
+    @Benchmark
+    public Map<String, String> latexHeaders() {
+        return AuthHelper.getAuthHeaders(latexData, APP_ID, SECRET);
+    }
+
+    @Benchmark
+    public Map<String, String> docHeaders() {
+        return AuthHelper.getAuthHeaders(docData, APP_ID, SECRET);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Map<String, String> latexHeadersContended() {
+        return AuthHelper.getAuthHeaders(latexData, APP_ID, SECRET);
+    }
+
+    @Benchmark
+    public Map<String, String> legacyLatexHeaders() throws Exception {
+        return legacyAuthHeaders(latexData, APP_ID, SECRET);
+    }
+
+    @Benchmark
+    public Map<String, String> legacyDocHeaders() throws Exception {
+        return legacyAuthHeaders(docData, APP_ID, SECRET);
+    }
+
+    /**
+     * 原实现去掉日志后的副本，作为对比基线。
+     */
+    private static Map<String, String> legacyAuthHeaders(Map<String, String> reqData, String appId,
+                                                         String secret) throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        StringBuilder random = new StringBuilder();
+        Random rnd = new Random();
+        for (int i = 0; i < 16; i++) {
+            random.append(CHARS.charAt(rnd.nextInt(CHARS.length())));
+        }
+        String randomStr = random.toString();
+        String timestamp = String.valueOf(new Date().getTime() / 1000);
+        headers.put("app-id", appId);
+        headers.put("random-str", randomStr);
+        headers.put("timestamp", timestamp);
+
+        List<String> sortedKeys = new ArrayList<>(reqData.keySet());
+        sortedKeys.add("app-id");
+        sortedKeys.add("random-str");
+        sortedKeys.add("timestamp");
+        Collections.sort(sortedKeys);
+
+        StringBuilder preSignString = new StringBuilder();
+        boolean first = true;
+        for (String key : sortedKeys) {
+            if (!first) {
+                preSignString.append("&");
+            }
+            first = false;
+            String value = key.equals("app-id") ? appId
+                    : key.equals("random-str") ? randomStr
+                    : key.equals("timestamp") ? timestamp
+                    : reqData.get(key);
+            preSignString.append(key).append("=").append(value);
+        }
+        preSignString.append("&secret=").append(secret);
+
+        byte[] bytes = MessageDigest.getInstance("MD5").digest(preSignString.toString().getBytes());
+        StringBuilder sign = new StringBuilder();
+        for (byte b : bytes) {
+            sign.append(String.format("%02x", b));
+        }
+        headers.put("sign", sign.toString());
+        return headers;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AuthHelperBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
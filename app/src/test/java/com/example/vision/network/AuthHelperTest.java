@@ -0,0 +1,54 @@
+package com.example.vision.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * 签名结果与服务端约定的算法一致：键排序后拼接，末尾加 secret，取 MD5。
+ */
+public class AuthHelperTest {
+
+    @Test
+    public void signMatchesReferenceDigest() {
+        Map<String, String> reqData = new HashMap<>();
+        reqData.put("use_batch", "false");
+
+        // md5("app-id=app&random-str=abcdefghijklmnop&timestamp=1700000000&use_batch=false&secret=secret")
+        assertEquals("b4c648a663e6746f3a1e5d1288c3a512",
+                AuthHelper.sign(reqData, "app", "secret", "abcdefghijklmnop", "1700000000"));
+    }
+
+    @Test
+    public void cachedKeyOrderDoesNotLeakBetweenKeySets() {
+        Map<String, String> latex = new HashMap<>();
+        latex.put("use_batch", "false");
+        Map<String, String> doc = new HashMap<>();
+        doc.put("inline_formula_wrapper", "[\"$\",\"$\"]");
+        doc.put("isolated_formula_wrapper", "[\"$$\",\"$$\"]");
+
+        AuthHelper.sign(latex, "app", "secret", "abcdefghijklmnop", "1700000000");
+        assertEquals("169d03dce1234ebb8361297860b51031",
+                AuthHelper.sign(doc, "app", "secret", "abcdefghijklmnop", "1700000000"));
+        assertEquals("b4c648a663e6746f3a1e5d1288c3a512",
+                AuthHelper.sign(latex, "app", "secret", "abcdefghijklmnop", "1700000000"));
+    }
+
+    @Test
+    public void headersCarryFreshRandomAndSign() {
+        Map<String, String> reqData = new HashMap<>();
+        reqData.put("use_batch", "false");
+
+        Map<String, String> first = AuthHelper.getAuthHeaders(reqData, "app", "secret");
+        Map<String, String> second = AuthHelper.getAuthHeaders(reqData, "app", "secret");
+
+        assertEquals("app", first.get("app-id"));
+        assertTrue(first.get("random-str").matches("[A-Za-z0-9]{16}"));
+        assertTrue(first.get("sign").matches("[0-9a-f]{32}"));
+        assertNotEquals(first.get("random-str"), second.get("random-str"));
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.vision.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+import org.json.JSONObject;
+
+/**
+ * 本地的 Simpletex 模拟服务器，按真实接口的格式回放 /api/latex_ocr 和 /api/doc_ocr 的响应，
+ * 也响应 NetworkManager 使用的 /latex/recognize 和 /document/correct。
+ * 可以配置处理延迟、服务端错误比例和限流（每秒请求数上限，超出时返回 429 和 Retry-After）。
+ */
+class MockSimpletexServer implements Closeable {
+    static final String LATEX = "\\frac{a}{b} + \\sqrt{x^2 + 1}";
+    static final String CONTENT = "# 第一章\n\n正文段落，包含行内公式 $E = mc^2$。\n\n$$\\int_0^1 x\\,dx$$\n";
+
+    private static final ByteString FILE_PART = ByteString.encodeUtf8("name=\"file\"");
+
+    private final MockWebServer server = new MockWebServer();
+    private final Random random = new Random(42);
+    private final Deque<Long> recentRequests = new ArrayDeque<>();
+
+    private volatile long latencyMillis = 0;
+    private volatile double errorRate = 0;
+    private volatile int maxRequestsPerSecond = 0;
+    private volatile boolean batchEnabled = true;
+
+    final AtomicInteger requestCount = new AtomicInteger();
+    final AtomicInteger errorCount = new AtomicInteger();
+    final AtomicInteger throttledCount = new AtomicInteger();
+    final AtomicInteger unsignedCount = new AtomicInteger();
+    final AtomicInteger batchCount = new AtomicInteger();
+
+    MockSimpletexServer() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request);
+            }
+        });
+        server.start();
+    }
+
+    String baseUrl() {
+        return server.url("/").toString();
+    }
+
+    String url(String path) {
+        return server.url(path).toString();
+    }
+
+    /**
+     * 每个请求在返回响应头之前等待的时间，模拟服务端识别耗时。
+     */
+    MockSimpletexServer setLatency(long millis) {
+        latencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * 以该比例随机返回 503。
+     */
+    MockSimpletexServer setErrorRate(double rate) {
+        errorRate = rate;
+        return this;
+    }
+
+    /**
+     * 最近一秒内的请求数超过上限时返回 429，0 表示不限流。
+     */
+    MockSimpletexServer setRateLimit(int requestsPerSecond) {
+        maxRequestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    /**
+     * 关闭后多图请求返回 400，模拟不接受批量识别的服务端。
+     */
+    MockSimpletexServer setBatchEnabled(boolean enabled) {
+        batchEnabled = enabled;
+        return this;
+    }
+
+    RecordedRequest takeRequest() throws InterruptedException {
+        return server.takeRequest(5, TimeUnit.SECONDS);
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        requestCount.incrementAndGet();
+        String path = request.getPath() != null ? request.getPath() : "";
+
+        if (path.startsWith("/latex/recognize")) {
+            return delayed(new MockResponse().setBody(LATEX));
+        }
+        if (path.startsWith("/document/correct")) {
+            return delayed(new MockResponse().setBody("ok"));
+        }
+        if (!path.startsWith("/api/latex_ocr") && !path.startsWith("/api/doc_ocr")) {
+            return new MockResponse().setResponseCode(404);
+        }
+
+        if (request.getHeader("app-id") == null || request.getHeader("sign") == null
+                || request.getHeader("timestamp") == null || request.getHeader("random-str") == null) {
+            unsignedCount.incrementAndGet();
+            return json(401, "{\"status\":false,\"message\":\"sign error\"}");
+        }
+        if (isThrottled()) {
+            throttledCount.incrementAndGet();
+            return json(429, "{\"status\":false,\"message\":\"too many requests\"}")
+                    .setHeader("Retry-After", "1");
+        }
+        if (errorRate > 0 && nextDouble() < errorRate) {
+            errorCount.incrementAndGet();
+            return json(503, "{\"status\":false,\"message\":\"server busy\"}");
+        }
+
+        if (path.startsWith("/api/doc_ocr")) {
+            return delayed(json(200, "{\"status\":true,\"res\":{\"content\":" + JSONObject.quote(CONTENT)
+                    + ",\"type\":\"doc\"},\"request_id\":\"tr_" + requestCount.get() + "\"}"));
+        }
+
+        // 多个 file 部分按批量请求处理，结果数组与上传顺序一致
+        int files = countFileParts(request.getBody().snapshot());
+        if (files > 1) {
+            if (!batchEnabled) {
+                return json(400, "{\"status\":false,\"message\":\"batch not supported\"}");
+            }
+            batchCount.incrementAndGet();
+            StringBuilder items = new StringBuilder("[");
+            for (int i = 0; i < files; i++) {
+                if (i > 0) items.append(',');
+                items.append("{\"latex\":").append(JSONObject.quote(LATEX + " % " + i))
+                        .append(",\"conf\":0.97}");
+            }
+            items.append(']');
+            return delayed(json(200, "{\"status\":true,\"res\":" + items
+                    + ",\"request_id\":\"tr_" + requestCount.get() + "\"}"));
+        }
+        return delayed(json(200, "{\"status\":true,\"res\":{\"latex\":" + JSONObject.quote(LATEX)
+                + ",\"conf\":0.97},\"request_id\":\"tr_" + requestCount.get() + "\"}"));
+    }
+
+    private synchronized boolean isThrottled() {
+        if (maxRequestsPerSecond <= 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        while (!recentRequests.isEmpty() && now - recentRequests.peekFirst() > TimeUnit.SECONDS.toNanos(1)) {
+            recentRequests.removeFirst();
+        }
+        if (recentRequests.size() >= maxRequestsPerSecond) {
+            return true;
+        }
+        recentRequests.addLast(now);
+        return false;
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private MockResponse delayed(MockResponse response) {
+        return response.setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static MockResponse json(int code, String body) {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setHeader("Content-Type", "application/json")
+                .setBody(body);
+    }
+
+    private static int countFileParts(ByteString body) {
+        int count = 0;
+        int index = body.indexOf(FILE_PART);
+        while (index >= 0) {
+            count++;
+            index = body.indexOf(FILE_PART, index + FILE_PART.size());
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+}
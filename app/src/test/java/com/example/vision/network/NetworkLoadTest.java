@@ -0,0 +1,308 @@
+package com.example.vision.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 网络层负载测试：经 OcrScheduler 对本地模拟服务器并发发送识别请求，统计吞吐量、延迟分位数和堆内存峰值。
+ * 请求数、失败数和限速下界总是检查；吞吐量、延迟和内存阈值依赖机器负载，
+ * 只在 -Dvision.perf=true 时检查，具体数字总是打印在测试输出中，便于前后对比。
+ */
+public class NetworkLoadTest {
+    private static final boolean PERF = Boolean.getBoolean("vision.perf");
+
+    private static final int THREADS = 8;
+    private static final int REQUESTS = 200;
+    private static final long SERVER_LATENCY_MS = 50;
+    // 负载测试中令牌桶不应成为瓶颈
+    private static final double UNLIMITED_RATE = 10_000;
+
+    // 识别器不读取文件，上传的是预先编码的测试图片
+    private static final File IMAGE_FILE = new File("crop.jpg");
+
+    private MockSimpletexServer server;
+    private SimpletexApiManager api;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockSimpletexServer().setLatency(SERVER_LATENCY_MS);
+        api = new SimpletexApiManager(server.baseUrl(), HttpClients.newBuilder().build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    /**
+     * 不经缓存、直接上传给定图片的调度器，Bitmap 编码在 JVM 单元测试中不可用。
+     */
+    private OcrScheduler scheduler(UploadImageEncoder.Encoded image, double requestsPerSecond, int burst) {
+        return new OcrScheduler(null, new OcrScheduler.Recognizer() {
+            @Override
+            public String recognize(File imageFile, String type) throws IOException {
+                return OcrScheduler.TYPE_LATEX.equals(type)
+                        ? api.recognizeLatex(image, imageFile.getName())
+                        : api.recognizePdf(image, imageFile.getName());
+            }
+
+            @Override
+            public List<String> recognizeLatexBatch(List<File> imageFiles) throws IOException {
+                List<UploadImageEncoder.Encoded> images = new ArrayList<>(imageFiles.size());
+                List<String> names = new ArrayList<>(imageFiles.size());
+                for (File imageFile : imageFiles) {
+                    images.add(image);
+                    names.add(imageFile.getName());
+                }
+                return api.recognizeLatexBatch(images, names);
+            }
+        }, THREADS, requestsPerSecond, burst);
+    }
+
+    private static List<File> formulaFiles(int count) {
+        List<File> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(new File("formula_" + i + ".jpg"));
+        }
+        return files;
+    }
+
+    private static List<String> awaitAll(List<Future<String>> futures) throws Exception {
+        List<String> texts = new ArrayList<>(futures.size());
+        for (Future<String> future : futures) {
+            texts.add(OcrScheduler.await(future));
+        }
+        return texts;
+    }
+
+    private static void assertPerf(String message, boolean condition) {
+        if (PERF) {
+            assertTrue(message, condition);
+        }
+    }
+
+    private interface Request {
+        void run() throws Exception;
+    }
+
+    /**
+     * 一轮负载的统计结果，延迟单位为毫秒。
+     */
+    private static class LoadResult {
+        int succeeded;
+        int failed;
+        double elapsedMs;
+        double throughput;
+        double p50;
+        double p95;
+        double p99;
+        double max;
+        long peakHeapDeltaBytes;
+
+        void print(String name) {
+            System.out.println(String.format(Locale.US,
+                    "%s: %d ok, %d failed in %.0f ms, %.1f req/s, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, "
+                            + "max %.1f ms, peak heap +%d KB",
+                    name, succeeded, failed, elapsedMs, throughput, p50, p95, p99, max,
+                    peakHeapDeltaBytes / 1024));
+        }
+    }
+
+    private static LoadResult runLoad(int threads, int requests, Request request) throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baselineHeap = runtime.totalMemory() - runtime.freeMemory();
+        AtomicLong peakHeap = new AtomicLong(baselineHeap);
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                peakHeap.accumulateAndGet(used, Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long[] latencies = new long[requests];
+        AtomicInteger failed = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> {
+                long begin = System.nanoTime();
+                try {
+                    request.run();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                }
+                latencies[index] = System.nanoTime() - begin;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        sampler.interrupt();
+        sampler.join();
+
+        Arrays.sort(latencies);
+        LoadResult result = new LoadResult();
+        result.failed = failed.get();
+        result.succeeded = requests - result.failed;
+        result.elapsedMs = elapsed / 1e6;
+        result.throughput = requests / (elapsed / 1e9);
+        result.p50 = percentile(latencies, 0.50);
+        result.p95 = percentile(latencies, 0.95);
+        result.p99 = percentile(latencies, 0.99);
+        result.max = latencies[latencies.length - 1] / 1e6;
+        result.peakHeapDeltaBytes = peakHeap.get() - baselineHeap;
+        return result;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    @Test
+    public void concurrentLatexRecognition() throws Exception {
+        OcrScheduler scheduler = scheduler(SimpletexApiManagerTest.testImage(300 * 1024),
+                UNLIMITED_RATE, THREADS);
+        LoadResult result = runLoad(THREADS, REQUESTS, () ->
+                scheduler.recognize(IMAGE_FILE, OcrScheduler.TYPE_LATEX, OcrScheduler.PRIORITY_BATCH));
+        result.print("latex_ocr");
+
+        assertEquals(0, result.failed);
+        assertEquals(REQUESTS, server.requestCount.get());
+        // 8 路并发、每个请求 50 ms，理想吞吐约 160 req/s
+        assertPerf("throughput " + result.throughput, result.throughput > 40);
+        assertPerf("p99 " + result.p99, result.p99 < 1000);
+        // 上传体直接引用编码结果，并发请求不应为每张图片额外复制多份
+        assertPerf("peak heap " + result.peakHeapDeltaBytes,
+                result.peakHeapDeltaBytes < 256L * 1024 * 1024);
+    }
+
+    @Test
+    public void concurrentDocumentRecognition() throws Exception {
+        OcrScheduler scheduler = scheduler(SimpletexApiManagerTest.testImage(800 * 1024),
+                UNLIMITED_RATE, THREADS);
+        LoadResult result = runLoad(THREADS, REQUESTS / 2, () ->
+                scheduler.recognize(IMAGE_FILE, OcrScheduler.TYPE_DOCUMENT, OcrScheduler.PRIORITY_BATCH));
+        result.print("doc_ocr");
+
+        assertEquals(0, result.failed);
+        assertEquals(REQUESTS / 2, server.requestCount.get());
+        assertPerf("throughput " + result.throughput, result.throughput > 20);
+        assertPerf("p99 " + result.p99, result.p99 < 2000);
+    }
+
+    @Test
+    public void schedulerStaysUnderServerRateLimit() throws Exception {
+        int rate = 20;
+        int burst = 5;
+        int requests = 60;
+        // 任意一秒内令牌桶最多放出 burst + rate = 25 个请求，低于服务端的 30
+        server.setRateLimit(30).setErrorRate(0.1);
+        OcrScheduler scheduler = scheduler(SimpletexApiManagerTest.testImage(100 * 1024), rate, burst);
+        LoadResult result = runLoad(THREADS, requests, () ->
+                scheduler.recognize(IMAGE_FILE, OcrScheduler.TYPE_LATEX, OcrScheduler.PRIORITY_BATCH));
+        result.print("latex_ocr rate limited");
+
+        // 503 由调度器退避重试，调用方看不到；令牌桶限速下服务端不会返回 429
+        assertEquals(0, result.failed);
+        assertEquals(0, server.throttledCount.get());
+        assertEquals(requests + server.errorCount.get(), server.requestCount.get());
+        // 下界与机器快慢无关：突发之后每个请求至少等待 1 / rate 秒
+        double minElapsedMs = (requests - burst) * 1000.0 / rate;
+        assertTrue("elapsed " + result.elapsedMs, result.elapsedMs >= minElapsedMs);
+    }
+
+    @Test
+    public void batchingReducesRequestCount() throws Exception {
+        OcrScheduler scheduler = scheduler(SimpletexApiManagerTest.testImage(50 * 1024),
+                UNLIMITED_RATE, THREADS);
+        List<File> files = formulaFiles(8);
+        LoadResult result = runLoad(THREADS, REQUESTS / 8, () -> {
+            List<String> texts = awaitAll(
+                    scheduler.submitBatch(files, OcrScheduler.TYPE_LATEX, OcrScheduler.PRIORITY_BATCH));
+            for (int i = 0; i < texts.size(); i++) {
+                // 批量结果按上传顺序分发回各页
+                assertEquals(MockSimpletexServer.LATEX + " % " + i, texts.get(i));
+            }
+        });
+        result.print("latex_ocr batch x8");
+
+        assertEquals(0, result.failed);
+        assertEquals(REQUESTS / 8, server.requestCount.get());
+        assertEquals(REQUESTS / 8, server.batchCount.get());
+    }
+
+    @Test
+    public void rejectedBatchFallsBackToSingleRequests() throws Exception {
+        server.setBatchEnabled(false);
+        OcrScheduler scheduler = scheduler(SimpletexApiManagerTest.testImage(50 * 1024),
+                UNLIMITED_RATE, THREADS);
+
+        List<String> texts = awaitAll(
+                scheduler.submitBatch(formulaFiles(8), OcrScheduler.TYPE_LATEX, OcrScheduler.PRIORITY_BATCH));
+
+        assertEquals(8, texts.size());
+        for (String text : texts) {
+            assertEquals(MockSimpletexServer.LATEX, text);
+        }
+        // 一次被拒绝的批量请求，之后逐张请求
+        assertEquals(1 + 8, server.requestCount.get());
+        assertEquals(0, server.batchCount.get());
+    }
+
+    @Test
+    public void throttlingAndErrorsAreReportedNotSwallowed() throws Exception {
+        // 直接调用 SimpletexApiManager，不经调度器的重试，检查每个 429 和 503 都以异常报告给调用方
+        server.setRateLimit(50).setErrorRate(0.1);
+        UploadImageEncoder.Encoded image = SimpletexApiManagerTest.testImage(100 * 1024);
+        AtomicInteger throttled = new AtomicInteger();
+        AtomicInteger serverErrors = new AtomicInteger();
+        LoadResult result = runLoad(THREADS, REQUESTS, () -> {
+            try {
+                api.recognizeLatex(image, "crop.jpg");
+            } catch (HttpStatusException e) {
+                if (e.isRateLimited()) {
+                    throttled.incrementAndGet();
+                } else if (e.isRetryable()) {
+                    serverErrors.incrementAndGet();
+                }
+                throw e;
+            }
+        });
+        result.print("latex_ocr throttled");
+
+        // 客户端看到的每个失败都对应服务端的一次 429 或 503
+        assertEquals(server.throttledCount.get(), throttled.get());
+        assertEquals(server.errorCount.get(), serverErrors.get());
+        assertEquals(result.failed, throttled.get() + serverErrors.get());
+        assertEquals(0, server.unsignedCount.get());
+    }
+}
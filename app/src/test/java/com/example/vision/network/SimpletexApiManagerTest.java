@@ -0,0 +1,136 @@
+package com.example.vision.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 对照本地模拟服务器检查请求格式、签名头、响应解析和错误映射。
+ */
+public class SimpletexApiManagerTest {
+    private MockSimpletexServer server;
+    private SimpletexApiManager api;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockSimpletexServer();
+        api = new SimpletexApiManager(server.baseUrl(), HttpClients.newBuilder().build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    static UploadImageEncoder.Encoded testImage(int bytes) {
+        byte[] data = new byte[bytes];
+        new Random(bytes).nextBytes(data);
+        return new UploadImageEncoder.Encoded(data, "image/jpeg", 1280, 720, 85, true);
+    }
+
+    @Test
+    public void recognizeLatexSendsSignedMultipartAndParsesResult() throws Exception {
+        String latex = api.recognizeLatex(testImage(64 * 1024), "crop.png");
+
+        assertEquals(MockSimpletexServer.LATEX, latex);
+        RecordedRequest request = server.takeRequest();
+        assertNotNull(request);
+        assertEquals("/api/latex_ocr", request.getPath());
+        assertNotNull(request.getHeader("sign"));
+        assertEquals(32, request.getHeader("sign").length());
+        assertEquals(16, request.getHeader("random-str").length());
+        String body = request.getBody().readUtf8();
+        assertTrue(body.contains("name=\"use_batch\""));
+        // 上传名使用编码后的扩展名
+        assertTrue(body.contains("filename=\"crop.jpg\""));
+        assertTrue(body.contains("Content-Type: image/jpeg"));
+    }
+
+    @Test
+    public void recognizePdfParsesMarkdownContent() throws Exception {
+        String content = api.recognizePdf(testImage(256 * 1024), "page_001.jpg");
+
+        assertEquals(MockSimpletexServer.CONTENT, content);
+        assertEquals("/api/doc_ocr", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void batchResultsAreReturnedInUploadOrder() throws Exception {
+        List<UploadImageEncoder.Encoded> images = Arrays.asList(testImage(1000), testImage(2000), testImage(3000));
+        List<String> texts = api.recognizeLatexBatch(images, Arrays.asList("a.jpg", "a.jpg", "b.jpg"));
+
+        assertEquals(3, texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(MockSimpletexServer.LATEX + " % " + i, texts.get(i));
+        }
+        assertEquals(1, server.batchCount.get());
+        assertEquals(1, server.requestCount.get());
+    }
+
+    @Test
+    public void serverErrorsSurfaceAsRetryableStatus() throws Exception {
+        server.setErrorRate(1.0);
+        try {
+            api.recognizeLatex(testImage(1000), "crop.jpg");
+            fail("expected HttpStatusException");
+        } catch (HttpStatusException e) {
+            assertEquals(503, e.getCode());
+            assertTrue(e.isRetryable());
+        }
+    }
+
+    @Test
+    public void throttlingCarriesRetryAfter() throws Exception {
+        server.setRateLimit(1);
+        api.recognizeLatex(testImage(1000), "crop.jpg");
+        try {
+            api.recognizeLatex(testImage(1000), "crop.jpg");
+            fail("expected HttpStatusException");
+        } catch (HttpStatusException e) {
+            assertTrue(e.isRateLimited());
+            assertEquals(1000, e.getRetryAfterMillis());
+        }
+    }
+
+    @Test
+    public void networkManagerUsesInjectedEndpoints() throws Exception {
+        OkHttpClient client = HttpClients.newBuilder().build();
+        NetworkManager manager = new NetworkManager(client,
+                server.url("/latex/recognize"), server.url("/document/correct"));
+        File image = File.createTempFile("crop", ".jpg");
+        image.deleteOnExit();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<String> result = new AtomicReference<>();
+        manager.recognizeLatex(image, new NetworkManager.NetworkCallback() {
+            @Override
+            public void onSuccess(String response) {
+                result.set(response);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(String error) {
+                result.set("failure: " + error);
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(MockSimpletexServer.LATEX, result.get());
+    }
+}